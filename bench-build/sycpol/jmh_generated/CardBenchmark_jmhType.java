@@ -0,0 +1,4 @@
+package sycpol.jmh_generated;
+public class CardBenchmark_jmhType extends CardBenchmark_jmhType_B3 {
+}
+
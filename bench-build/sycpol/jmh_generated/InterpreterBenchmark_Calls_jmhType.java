@@ -0,0 +1,4 @@
+package sycpol.jmh_generated;
+public class InterpreterBenchmark_Calls_jmhType extends InterpreterBenchmark_Calls_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package sycpol.jmh_generated;
+public class InterpreterBenchmark_Loop_jmhType extends InterpreterBenchmark_Loop_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package sycpol.jmh_generated;
+public class InterpreterBenchmark_jmhType extends InterpreterBenchmark_jmhType_B3 {
+}
+
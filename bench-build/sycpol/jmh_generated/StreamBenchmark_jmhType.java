@@ -0,0 +1,4 @@
+package sycpol.jmh_generated;
+public class StreamBenchmark_jmhType extends StreamBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,56 @@
+package sycpol;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+// Loading decks of one card per procedure, the same procedures from a
+// tape, and parsing the loaded lines.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int procedures;
+
+    private List<List<String>> cards;
+    private List<String> tape;
+    private Queue<String> lines;
+
+    @Setup
+    public void setup() {
+	this.cards = Decks.cards(this.procedures);
+	this.tape = Decks.tape(this.procedures);
+	CardParser parser = new CardParser();
+	parser.loadTape(this.tape);
+	this.lines = parser.getLines();
+    }
+
+    @Benchmark
+    public Queue<String> loadCard() {
+	CardParser parser = new CardParser();
+	for (List<String> card : this.cards)
+	    parser.loadCard(card);
+	return parser.getLines();
+    }
+
+    @Benchmark
+    public Queue<String> loadTape() {
+	CardParser parser = new CardParser();
+	parser.loadTape(this.tape);
+	return parser.getLines();
+    }
+
+    // Parsing takes the lines off the queue, so it gets a copy.
+    @Benchmark
+    public SycpolParser.Program parse() {
+	return SycpolEngine.parse(new ArrayDeque<>(this.lines));
+    }
+}
@@ -0,0 +1,137 @@
+package sycpol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Synthetic programs for the benchmarks.
+class Decks {
+
+    // Number of times the LOOP procedure goes round, and the number of
+    // statements it executes: an INCREMENT, IF and JUMP per round, with
+    // a RETURN instead of the last JUMP.
+    static final int LOOP_COUNT = 1000;
+    static final int LOOP_STATEMENTS = 3 * LOOP_COUNT;
+
+    // Right-aligns the type after the name, as in a card column.
+    static String line(String name, String type) {
+	StringBuilder sb = new StringBuilder(name);
+	while (sb.length() + type.length() < 22) sb.append(' ');
+	return sb.append(type).toString();
+    }
+
+    // The lines of procedure !Pn of the BENCH module, which counts to
+    // ten.
+    private static List<String> procedure(int n) {
+	return Arrays.asList(line("!P" + n, "PROCEDURE"),
+			     "VARIABLE       SECTION",
+			     "$I           INTEGER 8",
+			     "0",
+			     "",
+			     ".N           INTEGER 8",
+			     "10",
+			     "",
+			     "PROCEDURE CODE SECTION",
+			     "(1) INCREMENT $I",
+			     "(2) IF $I=.N       (4)",
+			     "(3) JUMP           (1)",
+			     "(4) RETURN",
+			     "      WITH SUCCESS");
+    }
+
+    // A deck of one card per procedure.
+    static List<List<String>> cards(int procedures) {
+	List<List<String>> cards = new ArrayList<>(procedures);
+	for (int i = 0; i < procedures; i++) {
+	    List<String> card = new ArrayList<>();
+	    card.add("PROGRAM           CARD");
+	    card.add("STANDARD SYSTEM CARD I");
+	    card.add("BENCH           MODULE");
+	    card.add("PROGRAM CODE  DIVISION");
+	    card.addAll(procedure(i));
+	    cards.add(card);
+	}
+	return cards;
+    }
+
+    // The same procedures on a single tape.
+    static List<String> tape(int procedures) {
+	List<String> tape = new ArrayList<>();
+	tape.add("PROGRAM           TAPE");
+	tape.add("STANDARD SYSTEM TAPE I");
+	tape.add("BENCH           MODULE");
+	tape.add("PROGRAM CODE  DIVISION");
+	for (int i = 0; i < procedures; i++) {
+	    tape.addAll(procedure(i));
+	    tape.add("");
+	}
+	return tape;
+    }
+
+    // A module with a tight loop of LOOP_COUNT rounds.
+    static final List<String> LOOP = Arrays.asList(
+	"PROGRAM           TAPE",
+	"STANDARD SYSTEM TAPE I",
+	"LOOP            MODULE",
+	"PROGRAM CODE  DIVISION",
+	line("!LOOP", "PROCEDURE"),
+	"VARIABLE       SECTION",
+	"$I          INTEGER 16",
+	"0",
+	"",
+	".N          INTEGER 16",
+	"" + LOOP_COUNT,
+	"",
+	"PROCEDURE CODE SECTION",
+	"(1) INCREMENT $I",
+	"(2) IF $I=.N       (4)",
+	"(3) JUMP           (1)",
+	"(4) RETURN",
+	"      WITH SUCCESS");
+
+    // A module calling the LAST procedure of LIBRARY by its identifier.
+    static final List<String> CALLER = Arrays.asList(
+	"PROGRAM           TAPE",
+	"STANDARD SYSTEM TAPE I",
+	"CALLER          MODULE",
+	"IMPORTS       DIVISION",
+	"!LP EXTERNAL PROCEDURE",
+	"IDENTIFIER   STRING 16",
+	"\"LAST\"",
+	"",
+	"MODULE NAME   STRING 8",
+	"\"LIBRARY\"",
+	"",
+	"PROGRAM CODE  DIVISION",
+	line("!CALL", "PROCEDURE"),
+	"PROCEDURE CODE SECTION",
+	"(1) PROCEED TO !LP",
+	"      WITH",
+	"(2) RETURN",
+	"      WITH SUCCESS");
+
+    // The LIBRARY module, with the called procedure after the others.
+    static List<String> library(int procedures) {
+	List<String> tape = new ArrayList<>();
+	tape.add("PROGRAM           TAPE");
+	tape.add("STANDARD SYSTEM TAPE I");
+	tape.add("LIBRARY         MODULE");
+	tape.add("DOCUMENTATION DIVISION");
+	tape.add("IDENTIFIER    STRING 8");
+	tape.add("\"LIBRARY\"");
+	tape.add("");
+	tape.add("PROGRAM CODE  DIVISION");
+	for (int i = 0; i < procedures; i++) {
+	    tape.add(line("!L" + i, "PROCEDURE"));
+	    tape.add("DOCUMENTATION  SECTION");
+	    tape.add("IDENTIFIER   STRING 16");
+	    tape.add(i == procedures-1 ? "\"LAST\"" : "\"L" + i + "\"");
+	    tape.add("");
+	    tape.add("PROCEDURE CODE SECTION");
+	    tape.add("(1) RETURN");
+	    tape.add("      WITH SUCCESS");
+	    tape.add("");
+	}
+	return tape;
+    }
+}
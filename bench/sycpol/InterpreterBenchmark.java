@@ -0,0 +1,73 @@
+package sycpol;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Resolving external procedures and dispatching statements.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    // A linked program and a module of it to run procedures in.
+    @SafeVarargs
+    static SycpolInterpreter.SycpolModule module(String name, boolean reference, List<String>... tapes) {
+	SycpolContext context = new SycpolContext();
+	context.reference = reference;
+	SycpolEngine engine = new SycpolEngine(context);
+	for (List<String> tape : tapes)
+	    engine.loadTape(tape);
+	SycpolParser.Program prog = engine.parse();
+	SycpolInterpreter inter = new SycpolInterpreter(prog, context);
+	inter.prepare();
+	return inter.new SycpolModule(prog.modules.get(name));
+    }
+
+    @State(Scope.Thread)
+    public static class Calls {
+	// Procedures in the library before the one called.
+	@Param({"10", "1000"})
+	public int procedures;
+
+	SycpolInterpreter.SycpolModule module;
+
+	@Setup
+	public void setup() {
+	    this.module = module("CALLER", false, Decks.CALLER, Decks.library(this.procedures));
+	}
+    }
+
+    @State(Scope.Thread)
+    public static class Loop {
+	// Whether statements are run through the reference interpreter.
+	@Param({"false", "true"})
+	public boolean reference;
+
+	SycpolInterpreter.SycpolModule module;
+	SycpolParser.Procedure loop;
+	List<SycpolInterpreter.SycpolObject> args = new ArrayList<>();
+
+	@Setup
+	public void setup() {
+	    this.module = module("LOOP", this.reference, Decks.LOOP);
+	    this.loop = this.module.getProcedure("!LOOP");
+	}
+    }
+
+    @Benchmark
+    public SycpolParser.Procedure getProcedure(Calls calls) {
+	return calls.module.getProcedure("!LP");
+    }
+
+    // Time per statement of a JUMP and IF loop.
+    @Benchmark
+    @OperationsPerInvocation(Decks.LOOP_STATEMENTS)
+    public void proceedTo(Loop loop) {
+	loop.module.proceedTo(loop.loop, loop.args);
+    }
+}
@@ -0,0 +1,78 @@
+package sycpol;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// SEND to an OUTS FS stream and THE NEXT FROM an INS FS stream, a
+// block of bytes at a time. Each block gets freshly opened files, so
+// the output does not grow and the input does not run out.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StreamBenchmark {
+
+    static final int BLOCK = 1 << 16;
+
+    private SycpolContext context;
+    private SycpolInterpreter inter;
+    private File source, sink;
+    private SycpolInterpreter.SycpolObject value, in, out;
+    private InputStream input;
+
+    @Setup
+    public void setup() throws IOException {
+	this.context = new SycpolContext();
+	this.inter = new SycpolInterpreter(new SycpolParser.Program(), this.context);
+	this.value = this.inter.integer((byte) 'A');
+
+	byte[] data = new byte[BLOCK];
+	for (int i = 0; i < BLOCK; i++) data[i] = (byte) ('A' + i % 26);
+	this.source = File.createTempFile("sycpol", ".in");
+	this.sink = File.createTempFile("sycpol", ".out");
+	Files.write(this.source.toPath(), data);
+    }
+
+    @TearDown
+    public void delete() {
+	this.source.delete();
+	this.sink.delete();
+    }
+
+    @Setup(Level.Invocation)
+    public void open() throws IOException {
+	this.input = this.context.streams.input(this.source);
+	this.in = this.inter.new SycpolObject(SycpolType.ISTREAM, this.input, null);
+	this.out = this.inter.new SycpolObject(SycpolType.OSTREAM, null,
+						this.context.streams.output(this.sink, 0, null));
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() throws IOException {
+	this.input.close();
+	this.context.streams.closeAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public void send() {
+	for (int i = 0; i < BLOCK; i++)
+	    this.out.send(this.value);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BLOCK)
+    public int next() {
+	int sum = 0;
+	for (int i = 0; i < BLOCK; i++)
+	    sum += this.in.next().integerValue();
+	return sum;
+    }
+}
@@ -0,0 +1,16 @@
+package sycpol;
+
+// Runs the benchmarks with the JMH command line, always with the GC
+// profiler, so that allocation rates are reported with the times:
+//
+//     java -jar dist/benchmarks.jar CardBenchmark -p procedures=1000
+public class SycpolBenchmarks {
+
+    public static void main(String... args) throws Exception {
+	String[] options = new String[args.length + 2];
+	options[0] = "-prof";
+	options[1] = "gc";
+	System.arraycopy(args, 0, options, 2, args.length);
+	org.openjdk.jmh.Main.main(options);
+    }
+}
@@ -1,15 +1,69 @@
 package sycpol;
 
 import sycpol.Sycpol;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 public class CardParser {
     public static final String STANDARD_CHARACTER_SET = "^[A-Z0-9\\Q.:,;!?-=\"'$%&|<>()/*^+ \\E]*$";
 
-    private String str;
+    // Checks lines against a character set. A set written as a single
+    // character class, like the standard one, becomes a lookup table;
+    // any other set is matched with its compiled pattern. A set is
+    // taken to be a single class only if it is ^[...]*$ with no other
+    // ], so that sets like ^[A-Z][0-9]*$ or ^[A-Z]*$|^[0-9]*$ are not.
+    static class CharacterSet {
+	private Pattern pattern;
+	private boolean[] table;
+
+	CharacterSet(String charset) {
+	    this.pattern = Pattern.compile(charset);
+	    if (charset.startsWith("^[") && charset.endsWith("]*$")
+		&& charset.indexOf(']') == charset.length() - 3) {
+		this.table = new boolean[128];
+		for (char c = 0; c < 128; c++)
+		    this.table[c] = this.pattern.matcher(String.valueOf(c)).matches();
+	    }
+	}
+
+	// Returns the first column, counting from 1, that is not in the
+	// set, 0 if the line is not in the set as a whole, or -1.
+	int check(String line) {
+	    if (this.table == null)
+		return this.pattern.matcher(line).matches() ? -1 : 0;
+	    for (int i = 0; i < line.length(); i++) {
+		char c = line.charAt(i);
+		if (c < 128 ? !this.table[c]
+		    : !this.pattern.matcher(String.valueOf(c)).matches())
+		    return i+1;
+	    }
+	    return -1;
+	}
+    }
+
+    private static final Map<String, CharacterSet> charsets = new ConcurrentHashMap<>();
+
+    static CharacterSet characterSet(String charset) {
+	CharacterSet set = charsets.get(charset);
+	if (set == null) {
+	    set = new CharacterSet(charset);
+	    charsets.put(charset, set);
+	}
+	return set;
+    }
+
+    // Padded lines of all loaded cards, in the order the parser reads
+    // them.
+    private Queue<String> lines;
 
     CardParser() {
-	this.str = "";
+	this.lines = new ArrayDeque<>();
     }
     
     public void loadCard(List<String> lines) {
@@ -17,17 +71,7 @@ public class CardParser {
     }
 
     public void loadCard(List<String> lines, int width, int height, String charset, String model) {
-	
-	for (String line : lines) {
-	    if (line.length() > width)
-		Sycpol.exit("SYNTAX ERROR: INCOMPATIBLE CARD WIDTH.");
-	}
-	
-	// Check card height
-	if (lines.size() > height)
-	    Sycpol.exit("SYNTAX ERROR: INCOMPATIBLE CARD HEIGHT.");
-	
-	loadTape(lines, width, charset, "CARD", model);
+	load(check(lines, width, height, charset, "CARD", model));
     }
 
     public void loadTape(List<String> lines) {
@@ -35,42 +79,104 @@ public class CardParser {
     }
     
     public void loadTape(List<String> lines, int width, String charset, String type, String model) {
+	load(check(lines, width, -1, charset, type, model));
+    }
+
+    // A card that has been checked but not loaded. Checking does not
+    // touch the parser, so cards can be checked concurrently and
+    // loaded in order afterwards.
+    public static class Card {
+	// Padded lines to load, or null for a comment card.
+	private List<String> lines;
+	// Arguments to Sycpol.exit if the card is invalid.
+	private String[] error;
+    }
+
+    public static Card checkCard(List<String> lines) {
+	return check(lines, 22, 22, STANDARD_CHARACTER_SET, "CARD", "STANDARD SYSTEM CARD I");
+    }
+
+    // Loads a checked card, or exits with its error.
+    public void load(Card card) {
+	if (card.error != null)
+	    Sycpol.exit(card.error[0], Arrays.copyOfRange(card.error, 1, card.error.length));
+	if (card.lines != null)
+	    this.lines.addAll(card.lines);
+    }
+
+    private static Card error(Card card, String... error) {
+	card.error = error;
+	return card;
+    }
+
+    // Checks a card, or a tape if height is -1. Width, character set
+    // and padding are handled in a single pass over the lines.
+    private static Card check(List<String> lines, int width, int height, String charset, String type, String model) {
+	Card card = new Card();
+	CharacterSet set = characterSet(charset);
+	List<String> padded = new ArrayList<>(lines.size()+1);
+	boolean wide = false;
+	String badLine = null;
+	int badColumn = -1;
+
+	for (int i = 0; i < lines.size(); i++) {
+	    String line = lines.get(i);
+	    if (height != -1 && line.length() > width)
+		wide = true;
+	    if (badLine == null) {
+		int column = set.check(line);
+		if (column != -1) {
+		    badLine = line;
+		    badColumn = column;
+		}
+	    }
+	    if (i >= 2) padded.add(pad(line, width));
+	}
+
+	if (wide)
+	    return error(card, "SYNTAX ERROR: INCOMPATIBLE CARD WIDTH.");
+
+	// Check card height
+	if (height != -1 && lines.size() > height)
+	    return error(card, "SYNTAX ERROR: INCOMPATIBLE CARD HEIGHT.");
 
 	if (lines.size() < 2)
-	    Sycpol.exit("SYNTAX ERROR: EMPTY CARD");
-	
-	for (String line : lines) {
-	    if (!line.matches(charset))
-		Sycpol.exit("SYNTAX ERROR: UNSUPPORTED CHARACTER SET.", "LINE:\n"+line);
+	    return error(card, "SYNTAX ERROR: EMPTY CARD");
+
+	if (badLine != null) {
+	    if (badColumn > 0)
+		return error(card, "SYNTAX ERROR: UNSUPPORTED CHARACTER SET.", "LINE:\n"+badLine, "COLUMN: " + badColumn);
+	    return error(card, "SYNTAX ERROR: UNSUPPORTED CHARACTER SET.", "LINE:\n"+badLine);
 	}
 	
 	// Check card declaration (PROGRAM CARD or COMMENT CARD)
 	if (lines.get(0).length() < width)
-	    Sycpol.exit("SYNTAX ERROR: MISSING "+type+" DECLARATION.");
+	    return error(card, "SYNTAX ERROR: MISSING "+type+" DECLARATION.");
 	if (!lines.get(0).endsWith(type))
-	    Sycpol.exit("SYNTAX ERROR: MISSING "+type+" DECLARATION.");
+	    return error(card, "SYNTAX ERROR: MISSING "+type+" DECLARATION.");
 	if (!lines.get(0).startsWith("COMMENT")
 	    && !lines.get(0).startsWith("PROGRAM"))
-	    Sycpol.exit("SCIM ERROR: UNSUPPORTED "+type+" TYPE.");
+	    return error(card, "SCIM ERROR: UNSUPPORTED "+type+" TYPE.");
 	
 	// Check card model
 	if (!lines.get(1).equals(model))
-	    Sycpol.exit("SCIM ERROR: UNSUPPORTED "+type+" MODEL.");
+	    return error(card, "SCIM ERROR: UNSUPPORTED "+type+" MODEL.");
 
-	if (lines.get(0).startsWith("COMMENT")) return;
+	if (lines.get(0).startsWith("COMMENT")) return card;
 	
-	// Load card
-	for (int i = 2; i < lines.size(); i++) {
-	    String line = lines.get(i);
-	    while (line.length() < width) line = line + " ";
-	    this.str += line + "\n";
-	}
-	String line = "";
-	while (line.length() < width) line = line + " ";
-	this.str += line + "\n";
+	padded.add(pad("", width));
+	card.lines = padded;
+	return card;
+    }
+
+    private static String pad(String line, int width) {
+	if (line.length() >= width) return line;
+	char[] padded = Arrays.copyOf(line.toCharArray(), width);
+	Arrays.fill(padded, line.length(), width, ' ');
+	return new String(padded);
     }
     
-    public String getCode() {
-	return this.str;
+    public Queue<String> getLines() {
+	return this.lines;
     }
 }
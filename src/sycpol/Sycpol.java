@@ -4,77 +4,203 @@ import sycpol.CardParser;
 import sycpol.SycpolParser;
 
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 
 import java.util.Arrays;
-import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
 public class Sycpol {
 
     public static final String VERSION = "0.1";
-
-    public static OutputStream STANDARD_OUTPUT = System.out;
-    public static InputStream STANDARD_INPUT = System.in;
     
+    // Ends the program with an error such as "TYPE ERROR: STRING
+    // EXPECTED.". The command line prints it and exits with status 1.
     public static void exit(String msg, String... more) {
-	try {
-	    String error = msg.split(":")[0];
-	    String str = msg.split(":")[1].trim();
-	    System.err.println(error+":");
-	    while (str.length() > 22) {
-		String line = str.substring(0, 21);
-		System.err.println(line+"\\");
-		str = str.substring(21).trim();
-	    }
-	    System.err.println(str);
-
-	    if (verbose)
-		for (String m : more) System.err.println(m);
-
-	    System.exit(1);
-	} catch (ArrayIndexOutOfBoundsException ex) {
-	    System.err.println("-> SCIM ERROR\nILLEGAL BUG.");
-	    System.exit(1);
-	}
+	throw new SycpolException(msg, more);
     }
     
-    public static List<String> readFile(String path) throws IOException {
-	return Files.readAllLines(Paths.get(path), StandardCharsets.US_ASCII);
+    public static List<String> readFile(String path, SycpolContext context) throws IOException {
+	File file = context.file(path);
+	context.read(file);
+	return Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
     }
 
-    public static void loadFile(String filepath, CardParser cards) throws IOException {
-	File file = new File(filepath);
+    public static void loadFile(String filepath, CardParser cards, SycpolContext context) throws IOException {
+	File file = context.file(filepath);
+	context.read(file);
 	if (!file.isDirectory())
 	    Sycpol.exit("IO ERROR: NOT A FILE.",
 			"NAME: " + filepath, "PATH: " + file.getAbsolutePath());
 
-	ArrayList<String> acards = new ArrayList<>(Arrays.asList(file.list()));
+	Set<String> names = new HashSet<>(Arrays.asList(file.list()));
+	int count = 0;
+	while (names.contains(""+(count+1))) count++;
+
+	// Cards are read and checked concurrently, then loaded in order,
+	// so the first error is always the one of the lowest card.
+	String dir = file.getAbsolutePath();
+	CardParser.Card[] checked = new CardParser.Card[count];
+	IOException[] failures = new IOException[count];
+	if (context.loadThreads > 1 && count > 1)
+	    loadPool(context.loadThreads)
+		.invoke(new CheckCards(dir, context, checked, failures, 0, count));
+	else for (int i = 0; i < count; i++)
+	    checked[i] = CardParser.checkCard(readFile(dir+"/"+(i+1), context));
+
+	for (int i = 0; i < count; i++) {
+	    if (failures[i] != null) throw failures[i];
+	    cards.load(checked[i]);
+	    if (context.debug) context.err.println("LOADING " + dir+"/"+(i+1));
+	}
+    }
+
+    // Pools reading the cards of -f directories, by number of threads.
+    // There are no more threads than processors, so no more pools
+    // either; idle pool threads exit by themselves.
+    private static final Map<Integer, ForkJoinPool> loadPools = new HashMap<>();
+
+    private static synchronized ForkJoinPool loadPool(int threads) {
+	threads = Math.min(threads, Runtime.getRuntime().availableProcessors());
+	ForkJoinPool pool = loadPools.get(threads);
+	if (pool == null) {
+	    pool = new ForkJoinPool(threads);
+	    loadPools.put(threads, pool);
+	}
+	return pool;
+    }
+
+    // Reads and checks the cards from+1 to to of a directory.
+    private static class CheckCards extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
 
-	for (int i = 1; true; i++) {
-	    if (acards.contains(""+i)) {
-		cards.loadCard(readFile(file.getAbsolutePath()+"/"+i));
-		if (debug) System.err.println("LOADING " + file.getAbsolutePath()+"/"+i);
+	private String dir;
+	private SycpolContext context;
+	private CardParser.Card[] checked;
+	private IOException[] failures;
+	private int from, to;
+
+	CheckCards(String dir, SycpolContext context, CardParser.Card[] checked, IOException[] failures, int from, int to) {
+	    this.dir = dir;
+	    this.context = context;
+	    this.checked = checked;
+	    this.failures = failures;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+	    if (this.to - this.from > 1) {
+		int mid = (this.from + this.to) >>> 1;
+		invokeAll(new CheckCards(this.dir, this.context, this.checked, this.failures, this.from, mid),
+			  new CheckCards(this.dir, this.context, this.checked, this.failures, mid, this.to));
+		return;
+	    }
+	    try {
+		this.checked[this.from]
+		    = CardParser.checkCard(readFile(this.dir+"/"+(this.from+1), this.context));
+	    } catch (IOException ex) {
+		this.failures[this.from] = ex;
 	    }
-	    else break;
 	}
     }
 
-    public static boolean verbose = false, debug = false;
+    // Prints the profile or trace of a run to the error stream, or to
+    // a file if a path is given.
+    private static void report(SycpolContext context, SycpolParser.Program prog, String path, boolean trace) {
+	PrintStream out = context.err;
+	try {
+	    if (path != null) out = new PrintStream(context.file(path), "US-ASCII");
+	} catch (IOException ex) {
+	    exit("IO ERROR: " + ex.toString().toUpperCase(), "NAME: " + path);
+	}
+	if (trace) context.trace.print(out, prog);
+	else context.profile.print(out, prog);
+	if (path != null) out.close();
+    }
+
+    private static int traceSize(String arg) {
+	try {
+	    int size = Integer.parseInt(arg);
+	    if (size > 0 && size <= 1 << 24) return size;
+	} catch (NumberFormatException ex) {
+	}
+	exit("ARGUMENT ERROR: INVALID TRACE SIZE.", "GOT: " + arg);
+	return 0;
+    }
+
+    private static int maxDepth(String arg) {
+	try {
+	    int depth = Integer.parseInt(arg);
+	    if (depth > 0) return depth;
+	} catch (NumberFormatException ex) {
+	}
+	exit("ARGUMENT ERROR: INVALID CALL DEPTH.", "GOT: " + arg);
+	return 0;
+    }
+
+    private static int loadThreads(String arg) {
+	try {
+	    int threads = Integer.parseInt(arg);
+	    if (threads > 0) return threads;
+	} catch (NumberFormatException ex) {
+	}
+	exit("ARGUMENT ERROR: INVALID THREAD COUNT.", "GOT: " + arg);
+	return 0;
+    }
+
+    private static int cacheLines(String arg) {
+	try {
+	    int lines = Integer.parseInt(arg);
+	    if (lines >= 0) return lines;
+	} catch (NumberFormatException ex) {
+	}
+	exit("ARGUMENT ERROR: INVALID LINE COUNT.", "GOT: " + arg);
+	return 0;
+    }
 
     public static void main(String... args) {
+	SycpolContext context = new SycpolContext();
+	try {
+	    if (args.length > 1 && args[0].equals("--server"))
+		SycpolServer.serve(Arrays.copyOfRange(args, 1, args.length));
+	    else if (args.length > 1 && args[0].equals("--connect"))
+		System.exit(SycpolClient.connect(args[1], Arrays.copyOfRange(args, 2, args.length)));
+	    else {
+		context.openStandardStreams();
+		run(context, args);
+	    }
+	} catch (SycpolException ex) {
+	    context.streams.closeAll();
+	    ex.print(System.err, context.verbose);
+	    System.exit(1);
+	}
+    }
+
+    // Runs the command line in a context whose standard streams are
+    // open. The linked program is left in the context.
+    public static void run(SycpolContext context, String... args) {
 	boolean checkCardsOnly=false, checkDeclarationsOnly=false;
+	boolean useCache=true, rebuildCache=false;
+	int cacheLines = SycpolCache.MIN_LINES;
+	String compileTo = null, profileTo = null, traceTo = null;
+
+	// A server run may reuse the program of an earlier run.
+	SycpolParser.Program cached = context.program;
 	
 	try {
-	    CardParser cards = new CardParser();
+	    SycpolEngine engine = new SycpolEngine(context);
 	    
 	    for (int i = 0; i < args.length; i++) {
 		switch (args[i]) {
@@ -86,69 +212,120 @@ public class Sycpol {
 		    break;
 		case "-V":
 		case "--verbose":
-		    verbose = true;
+		    context.verbose = true;
 		    break;
 		case "--debug":
-		    debug = true;
+		    context.debug = true;
+		    break;
+		case "--reference":
+		    context.reference = true;
+		    break;
+		case "--profile":
+		    context.profile = new SycpolProfile();
+		    break;
+		case "--profile-to":
+		    context.profile = new SycpolProfile();
+		    profileTo = args[++i];
+		    break;
+		case "--max-depth":
+		    context.maxDepth = maxDepth(args[++i]);
+		    break;
+		case "--trace":
+		    context.trace = new SycpolTrace(traceSize(args[++i]));
+		    break;
+		case "--trace-to":
+		    if (context.trace == null)
+			context.trace = new SycpolTrace(SycpolTrace.DEFAULT_SIZE);
+		    traceTo = args[++i];
+		    break;
+		case "--compile-to":
+		    compileTo = args[++i];
+		    break;
+		case "--flush":
+		    context.streams.policy(args[++i]);
+		    break;
+		case "--fsync":
+		    context.streams.syncPolicy(args[++i]);
+		    break;
+		case "--no-cache":
+		    useCache = false;
+		    break;
+		case "--rebuild-cache":
+		    rebuildCache = true;
+		    break;
+		case "--cache-lines":
+		    cacheLines = cacheLines(args[++i]);
+		    break;
+		case "--load-threads":
+		    context.loadThreads = loadThreads(args[++i]);
 		    break;
 		case "-h":
 		case "--help":
-		    System.out.println("SYCPOL COMPILER.");
+		    context.out.println("SYCPOL COMPILER.");
 		    return;
 		case "-v":
 		case "--version":
-		    System.out.println(VERSION);
+		    context.out.println(VERSION);
 		    return;
 		case "-f":
 		    String file = args[++i];
-		    try {
-			loadFile(file, cards);
-		    } catch(IOException ex) {
-			exit("IO ERROR: " + ex.toString().toUpperCase());
-		    }
+		    if (cached == null) engine.loadFile(file);
 		    break;
 		case "-t":
 		case "--tape":
-		    try {
-			cards.loadTape(readFile(args[++i]));
-		    } catch(IOException ex) {
-			exit("IO ERROR: " + ex.toString().toUpperCase(), "NAME: " + args[i]);
-		    }
+		    String tape = args[++i];
+		    if (cached == null) engine.loadTape(tape);
 		    break;
 		default:
-		    try {
-			cards.loadCard(readFile(args[i]));
-		    } catch(IOException ex) {
-			exit("IO ERROR: " + ex.toString().toUpperCase(), "NAME: " + args[i]);
-		    }
+		    if (cached == null) engine.loadCard(args[i]);
 		    break;
 		}
 	    }
 	    
 	    if (checkCardsOnly) return;
 
-	    String[] lines = cards.getCode().split("\n");
-	    Queue<String> queue = new ArrayBlockingQueue(lines.length);
-	    for (String s : lines) {
-		if (debug) System.out.println(s);
-		queue.offer(s);
-	    }
+	    Queue<String> queue = engine.lines();
+	    if (context.debug)
+		for (String s : queue) context.out.println(s);
 	    
 	    if (checkDeclarationsOnly) return;
 
-	    SycpolParser.Program prog = new SycpolParser().new Program();
-	    
-	    prog.parse(queue);
+	    // Compiled jars and reference mode always parse the cards.
+	    String key = null;
+	    SycpolParser.Program prog = cached;
+	    if (prog == null && useCache && compileTo == null && !context.reference
+		&& queue.size() >= cacheLines) {
+		key = SycpolCache.key(queue);
+		if (key != null && !rebuildCache) prog = SycpolCache.load(key, context);
+	    }
+
+	    boolean parsed = prog == null;
+	    if (parsed) prog = SycpolEngine.parse(queue);
+
+	    if (compileTo != null) {
+		new SycpolClassWriter(prog, context).write(context.file(compileTo).getPath());
+		return;
+	    }
 	    
-	    SycpolInterpreter inter = new SycpolInterpreter(prog);
-	    inter.interpret();
+	    engine.link(prog);
+	    if (parsed && key != null) SycpolCache.store(key, prog, context);
+	    context.program = prog;
 
-	    STANDARD_OUTPUT.flush();
-	    STANDARD_OUTPUT.write('\n');
+	    SycpolEngine.Result result = engine.run(prog);
+	    // The profile is printed also when the program fails, the
+	    // trace only then.
+	    if (context.profile != null) report(context, prog, profileTo, false);
+	    if (result.error != null && context.trace != null) report(context, prog, traceTo, true);
+	    if (result.error != null) throw result.error;
 	    
+	} catch (SycpolException ex) {
+	    throw ex;
 	} catch (Exception ex) {
-	    System.err.println("SCIM ERROR:\nILLEGAL BUG.");
-	    ex.printStackTrace();
+	    context.streams.closeAll();
+	    context.err.println("SCIM ERROR:\nILLEGAL BUG.");
+	    ex.printStackTrace(context.err);
+	    if (context.trace != null && context.program != null)
+		report(context, context.program, traceTo, true);
 	}
     }
 }
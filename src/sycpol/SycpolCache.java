@@ -0,0 +1,437 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+import sycpol.SycpolParser.*;
+import sycpol.SycpolCompiler.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.zip.CRC32;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+// Cache of compiled and linked programs. Entries are keyed by a hash
+// of the loaded card lines, the interpreter version and the classes
+// that parse and compile programs. An entry that cannot be read for
+// any reason is deleted and the program is parsed again.
+public class SycpolCache {
+
+    private static final String MAGIC = "VISCIMJA CACHE 1";
+
+    // Smaller programs parse faster than the cache can be checked.
+    // Changed with --cache-lines.
+    public static final int MIN_LINES = 2000;
+
+    private static final String[] CLASSES = {
+	"SycpolParser.class", "SycpolCompiler.class",
+	"SycpolLinker.class", "SycpolType.class",
+	"SycpolCache.class", "SycpolCache$Reader.class",
+	"SycpolCache$Writer.class"
+    };
+
+    public static File directory() {
+	String base = System.getenv("XDG_CACHE_HOME");
+	if (base == null || base.length() == 0)
+	    base = System.getProperty("user.home") + File.separator + ".cache";
+	return new File(base, "viscimja");
+    }
+
+    // Returns the key of a program, or null if it cannot be computed.
+    public static String key(Queue<String> lines) {
+	try {
+	    MessageDigest md = MessageDigest.getInstance("SHA-256");
+	    md.update((MAGIC + "\n" + Sycpol.VERSION + "\n").getBytes(StandardCharsets.US_ASCII));
+	    byte[] buf = new byte[8192];
+	    for (String c : CLASSES) {
+		InputStream in = SycpolCache.class.getResourceAsStream(c);
+		if (in == null) continue;
+		try {
+		    for (int n; (n = in.read(buf)) != -1; ) md.update(buf, 0, n);
+		} finally {
+		    in.close();
+		}
+	    }
+	    for (String line : lines) {
+		md.update(line.getBytes(StandardCharsets.US_ASCII));
+		md.update((byte) '\n');
+	    }
+
+	    StringBuilder key = new StringBuilder();
+	    for (byte b : md.digest()) key.append(String.format("%02x", b));
+	    return key.toString();
+	} catch (NoSuchAlgorithmException | IOException ex) {
+	    return null;
+	}
+    }
+
+    // Returns the cached program, or null if there is no usable entry.
+    public static SycpolParser.Program load(String key, SycpolContext context) {
+	File file = new File(directory(), key);
+	if (!file.isFile()) return null;
+
+	try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+	    if (!in.readUTF().equals(MAGIC) || !in.readUTF().equals(key))
+		throw new IOException("stale entry");
+	    long crc = in.readLong();
+	    byte[] data = new byte[in.readInt()];
+	    in.readFully(data);
+	    if (in.read() != -1 || checksum(data) != crc)
+		throw new IOException("corrupt entry");
+
+	    SycpolParser.Program prog
+		= new Reader(new DataInputStream(new ByteArrayInputStream(data))).program();
+	    if (context.debug) context.err.println("LOADED CACHE " + file);
+	    return prog;
+	} catch (Exception ex) {
+	    if (context.debug) context.err.println("INVALID CACHE " + file + ": " + ex);
+	    file.delete();
+	    return null;
+	}
+    }
+
+    // Stores a linked program. Entries are written to a temporary file
+    // and moved into place, so readers never see a partial entry.
+    // Failures only cost the cache.
+    public static void store(String key, SycpolParser.Program prog, SycpolContext context) {
+	File dir = directory();
+	File tmp = null;
+	try {
+	    ByteArrayOutputStream data = new ByteArrayOutputStream();
+	    new Writer(new DataOutputStream(data)).program(prog);
+	    byte[] bytes = data.toByteArray();
+
+	    dir.mkdirs();
+	    tmp = File.createTempFile(key, ".tmp", dir);
+	    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+		out.writeUTF(MAGIC);
+		out.writeUTF(key);
+		out.writeLong(checksum(bytes));
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	    }
+	    Files.move(tmp.toPath(), new File(dir, key).toPath(),
+		       StandardCopyOption.REPLACE_EXISTING,
+		       StandardCopyOption.ATOMIC_MOVE);
+	    if (context.debug) context.err.println("STORED CACHE " + key);
+	} catch (IOException ex) {
+	    if (context.debug) context.err.println("CACHE NOT STORED: " + ex);
+	    if (tmp != null) tmp.delete();
+	}
+    }
+
+    private static long checksum(byte[] data) {
+	CRC32 crc = new CRC32();
+	crc.update(data, 0, data.length);
+	return crc.getValue();
+    }
+
+    // Declaration tags.
+    private static final int DECLARATION = 0, VARIABLE = 1, PARAMETER = 2, FIELD = 3;
+
+    // Writes a program. Modules and their declarations come first, so
+    // that the code written after them can refer to procedures and
+    // structures of any module by module and name.
+    private static class Writer {
+	private DataOutputStream out;
+	private Map<Object, String> owners = new IdentityHashMap<>();
+
+	Writer(DataOutputStream out) {
+	    this.out = out;
+	}
+
+	void program(SycpolParser.Program prog) throws IOException {
+	    for (SycpolParser.Module mod : prog.modules.values()) {
+		for (Procedure proc : mod.procedures.values()) this.owners.put(proc, mod.name);
+		for (Structure str : mod.structures.values()) this.owners.put(str, mod.name);
+	    }
+
+	    this.out.writeBoolean(prog.linked);
+	    this.out.writeInt(prog.modules.size());
+	    for (SycpolParser.Module mod : prog.modules.values())
+		this.module(mod);
+	    for (SycpolParser.Module mod : prog.modules.values())
+		for (Procedure proc : mod.procedures.values())
+		    this.code(proc.code);
+	}
+
+	private void module(SycpolParser.Module mod) throws IOException {
+	    this.string(mod.name);
+	    this.out.writeBoolean(mod.out);
+	    this.out.writeBoolean(mod.in);
+	    this.out.writeInt(mod.slots);
+	    this.declarations(mod.info);
+	    this.declarations(mod.variables);
+
+	    this.out.writeInt(mod.procedures.size());
+	    for (Procedure proc : mod.procedures.values()) {
+		this.string(proc.name);
+		this.declarations(proc.info);
+		this.declarations(proc.parameters);
+		this.declarations(proc.variables);
+		this.out.writeInt(proc.statements.size());
+		for (Map.Entry<Short, String> e : proc.statements.entrySet()) {
+		    this.out.writeShort(e.getKey());
+		    this.string(e.getValue());
+		}
+		this.out.writeInt(proc.entry);
+		this.out.writeInt(proc.slots);
+	    }
+
+	    this.out.writeInt(mod.structures.size());
+	    for (Structure str : mod.structures.values()) {
+		this.string(str.name);
+		this.declarations(str.fields);
+		this.declarations(str.info);
+	    }
+
+	    this.out.writeInt(mod.externalProcedures.size());
+	    for (ExternalProcedure ext : mod.externalProcedures.values()) {
+		this.string(ext.name);
+		this.declarations(ext.info);
+	    }
+
+	    this.out.writeInt(mod.externalStructures.size());
+	    for (ExternalStructure ext : mod.externalStructures.values()) {
+		this.string(ext.name);
+		this.declarations(ext.info);
+	    }
+	}
+
+	private void declarations(List<? extends Declaration> decls) throws IOException {
+	    this.out.writeInt(decls.size());
+	    for (Declaration decl : decls) {
+		this.out.writeByte(decl instanceof Variable ? VARIABLE
+				   : decl instanceof Parameter ? PARAMETER
+				   : decl instanceof Field ? FIELD
+				   : DECLARATION);
+		this.string(decl.name);
+		this.string(decl.datatype == null ? null : decl.datatype.name);
+		this.string(decl.value);
+		this.out.writeInt(decl.slot);
+	    }
+	}
+
+	private void code(Instruction[] code) throws IOException {
+	    if (code == null) {
+		this.out.writeInt(-1);
+		return;
+	    }
+	    this.out.writeInt(code.length);
+	    for (Instruction ins : code) {
+		this.out.writeByte(ins.op.ordinal());
+		this.out.writeShort(ins.line);
+		this.string(ins.source);
+		this.string(ins.name);
+		this.expression(ins.object);
+		this.expression(ins.value);
+		this.out.writeInt(ins.args == null ? -1 : ins.args.length);
+		if (ins.args != null)
+		    for (Expression arg : ins.args) this.expression(arg);
+		this.out.writeShort(ins.label);
+		this.out.writeInt(ins.target);
+		this.out.writeInt(ins.next);
+		this.reference(ins.procedure, ins.procedure == null ? null : ins.procedure.name);
+	    }
+	}
+
+	private void expression(Expression e) throws IOException {
+	    this.out.writeBoolean(e != null);
+	    if (e == null) return;
+	    this.out.writeByte(e.kind.ordinal());
+	    this.string(e.name);
+	    this.expression(e.at);
+	    this.expression(e.of);
+	    this.out.writeBoolean(e.atFirst);
+	    this.out.writeInt(e.slot);
+	    this.out.writeInt(e.global);
+	    this.reference(e.structure, e.structure == null ? null : e.structure.name);
+	    this.string(e.type == null ? null : e.type.name);
+	}
+
+	private void reference(Object target, String name) throws IOException {
+	    this.string(target == null ? null : this.owners.get(target));
+	    if (target != null) this.string(name);
+	}
+
+	private void string(String str) throws IOException {
+	    this.out.writeBoolean(str != null);
+	    if (str != null) this.out.writeUTF(str);
+	}
+    }
+
+    private static class Reader {
+	private DataInputStream in;
+	private SycpolParser.Program prog;
+
+	Reader(DataInputStream in) {
+	    this.in = in;
+	}
+
+	SycpolParser.Program program() throws IOException {
+	    this.prog = new SycpolParser.Program();
+	    this.prog.linked = this.in.readBoolean();
+	    List<SycpolParser.Module> mods = new ArrayList<>();
+	    for (int i = this.in.readInt(); i > 0; i--) {
+		SycpolParser.Module mod = this.module();
+		this.prog.modules.put(mod.name, mod);
+		mods.add(mod);
+	    }
+	    for (SycpolParser.Module mod : mods)
+		for (Procedure proc : mod.procedures.values())
+		    proc.code = this.code();
+	    return this.prog;
+	}
+
+	private SycpolParser.Module module() throws IOException {
+	    SycpolParser.Module mod = new SycpolParser.Module(this.string());
+	    mod.out = this.in.readBoolean();
+	    mod.in = this.in.readBoolean();
+	    mod.slots = this.in.readInt();
+	    mod.info = this.declarations(Declaration.class);
+	    mod.variables = this.declarations(Variable.class);
+
+	    for (int i = this.in.readInt(); i > 0; i--) {
+		Procedure proc = new Procedure(this.string());
+		proc.info = this.declarations(Declaration.class);
+		proc.parameters = this.declarations(Parameter.class);
+		proc.variables = this.declarations(Variable.class);
+		for (int j = this.in.readInt(); j > 0; j--) {
+		    short line = this.in.readShort();
+		    proc.statements.put(line, this.string());
+		}
+		proc.entry = this.in.readInt();
+		proc.slots = this.in.readInt();
+		proc.module = mod;
+		mod.procedures.put(proc.name, proc);
+	    }
+
+	    for (int i = this.in.readInt(); i > 0; i--) {
+		Structure str = new Structure(this.string());
+		str.fields = this.declarations(Field.class);
+		str.info = this.declarations(Declaration.class);
+		mod.structures.put(str.name, str);
+	    }
+
+	    for (int i = this.in.readInt(); i > 0; i--) {
+		ExternalProcedure ext = new ExternalProcedure(this.string());
+		ext.info = this.declarations(Declaration.class);
+		mod.externalProcedures.put(ext.name, ext);
+	    }
+
+	    for (int i = this.in.readInt(); i > 0; i--) {
+		ExternalStructure ext = new ExternalStructure(this.string());
+		ext.info = this.declarations(Declaration.class);
+		mod.externalStructures.put(ext.name, ext);
+	    }
+	    return mod;
+	}
+
+	private <T extends Declaration> List<T> declarations(Class<T> cls) throws IOException {
+	    int n = this.in.readInt();
+	    List<T> decls = new ArrayList<>(n);
+	    for (int i = 0; i < n; i++) {
+		Declaration decl;
+		switch (this.in.readByte()) {
+		case VARIABLE: decl = new Variable(); break;
+		case PARAMETER: decl = new Parameter(); break;
+		case FIELD: decl = new Field(); break;
+		case DECLARATION: decl = new Declaration(); break;
+		default: throw new IOException("bad declaration");
+		}
+		decl.name = this.string();
+		decl.datatype = this.type();
+		decl.value = this.string();
+		decl.slot = this.in.readInt();
+		decls.add(cls.cast(decl));
+	    }
+	    return decls;
+	}
+
+	private Instruction[] code() throws IOException {
+	    int n = this.in.readInt();
+	    if (n == -1) return null;
+	    Instruction[] code = new Instruction[n];
+	    for (int i = 0; i < n; i++) {
+		Op op = Op.values()[this.in.readByte()];
+		short line = this.in.readShort();
+		Instruction ins = new Instruction(op, line, this.string());
+		ins.name = this.string();
+		ins.object = this.expression();
+		ins.value = this.expression();
+		int args = this.in.readInt();
+		if (args != -1) {
+		    ins.args = new Expression[args];
+		    for (int j = 0; j < args; j++) ins.args[j] = this.expression();
+		}
+		ins.label = this.in.readShort();
+		ins.target = this.in.readInt();
+		ins.next = this.in.readInt();
+		String mod = this.string();
+		if (mod != null)
+		    ins.procedure = this.module(mod).procedures.get(this.string());
+		code[i] = ins;
+	    }
+	    return code;
+	}
+
+	private Expression expression() throws IOException {
+	    if (!this.in.readBoolean()) return null;
+	    Kind kind = Kind.values()[this.in.readByte()];
+	    Expression e = new Expression(kind, this.string());
+	    e.at = this.expression();
+	    e.of = this.expression();
+	    e.atFirst = this.in.readBoolean();
+	    e.slot = this.in.readInt();
+	    e.global = this.in.readInt();
+	    String mod = this.string();
+	    if (mod != null)
+		e.structure = this.module(mod).structures.get(this.string());
+	    e.type = this.type();
+	    return e;
+	}
+
+	private SycpolParser.Module module(String name) throws IOException {
+	    SycpolParser.Module mod = this.prog.modules.get(name);
+	    if (mod == null) throw new IOException("bad reference");
+	    return mod;
+	}
+
+	// Types are checked before SycpolType.of sees them, since it exits
+	// on unknown names.
+	private SycpolType type() throws IOException {
+	    String name = this.string();
+	    if (name == null) return null;
+	    String base = name;
+	    while (base.startsWith("+")) base = base.substring(1);
+	    if (!base.startsWith("%") && !Arrays.asList(SycpolParser.datatypes).contains(base))
+		throw new IOException("bad type");
+	    return SycpolType.of(name);
+	}
+
+	private String string() throws IOException {
+	    return this.in.readBoolean() ? this.in.readUTF() : null;
+	}
+    }
+}
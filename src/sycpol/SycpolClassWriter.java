@@ -0,0 +1,372 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+import sycpol.SycpolParser.*;
+import sycpol.SycpolCompiler.*;
+import sycpol.SycpolInterpreter.SycpolObject;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+// Compiles a program ahead of time into a jar with one class per
+// module and one method per procedure. The classes are generated as
+// Java source and compiled with the system Java compiler; at run time
+// they need the interpreter classes on the class path.
+public class SycpolClassWriter {
+
+    public static final String MAIN_CLASS = "CompiledProgram";
+
+    private Program program;
+    private SycpolInterpreter inter;
+
+    private Map<SycpolParser.Module, String> classes = new IdentityHashMap<>();
+    private Map<Procedure, String> methods = new IdentityHashMap<>();
+
+    public SycpolClassWriter(Program program, SycpolContext context) {
+	this.program = program;
+	this.inter = new SycpolInterpreter(program, context);
+    }
+
+    public void write(String jarpath) {
+	new SycpolCompiler().compile(this.program);
+	new SycpolLinker(this.program, this.inter).link();
+
+	int i = 0;
+	for (SycpolParser.Module mod : this.program.modules.values()) {
+	    String cls = "M" + i++ + "_" + mod.name.replaceAll("[^A-Z0-9]", "_");
+	    this.classes.put(mod, cls);
+	    int j = 0;
+	    for (Procedure proc : mod.procedures.values())
+		this.methods.put(proc, cls + ".p" + j++);
+	}
+
+	Map<String, String> sources = new HashMap<>();
+	for (SycpolParser.Module mod : this.program.modules.values())
+	    sources.put(this.classes.get(mod), generate(mod));
+	sources.put(MAIN_CLASS, generateMain());
+
+	Path dir = null;
+	try {
+	    dir = Files.createTempDirectory("viscimja");
+	    List<String> args = new ArrayList<>(Arrays.asList(
+		"-nowarn",
+		"-classpath", System.getProperty("java.class.path"),
+		"-d", dir.toString()));
+	    for (Map.Entry<String, String> e : sources.entrySet()) {
+		Path src = dir.resolve(e.getKey() + ".java");
+		Files.write(src, e.getValue().getBytes(StandardCharsets.UTF_8));
+		args.add(src.toString());
+	    }
+
+	    JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+	    if (javac == null)
+		Sycpol.exit("SCIM ERROR: JAVA COMPILER NOT AVAILABLE.");
+	    if (javac.run(null, null, null, args.toArray(new String[args.size()])) != 0)
+		Sycpol.exit("SCIM ERROR: CLASS COMPILATION FAILED.", "JAR: " + jarpath);
+
+	    Manifest manifest = new Manifest();
+	    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+	    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "sycpol." + MAIN_CLASS);
+	    try (JarOutputStream jar
+		 = new JarOutputStream(new FileOutputStream(jarpath), manifest)) {
+		File[] files = new File(dir.toFile(), "sycpol").listFiles();
+		Arrays.sort(files);
+		for (File f : files) {
+		    jar.putNextEntry(new JarEntry("sycpol/" + f.getName()));
+		    jar.write(Files.readAllBytes(f.toPath()));
+		    jar.closeEntry();
+		}
+	    }
+	} catch (IOException ex) {
+	    Sycpol.exit("IO ERROR: " + ex.toString().toUpperCase(), "NAME: " + jarpath);
+	} finally {
+	    if (dir != null) delete(dir.toFile());
+	}
+    }
+
+    private static void delete(File file) {
+	File[] files = file.listFiles();
+	if (files != null)
+	    for (File f : files) delete(f);
+	file.delete();
+    }
+
+    private String generateMain() {
+	SycpolParser.Module main = null;
+	for (SycpolParser.Module mod : this.program.modules.values()) {
+	    if (mod.procedures.get("MAIN") != null) {
+		if (main != null)
+		    Sycpol.exit("PROGRAM ERROR: MULTIPLE MAIN PROCEDURES.");
+		else main = mod;
+	    }
+	}
+
+	StringBuilder out = new StringBuilder();
+	out.append("package sycpol;\n\n");
+	out.append("public class " + MAIN_CLASS + " {\n");
+	out.append("    public static void main(String... args) {\n");
+	out.append("\tSycpolContext context = SycpolClassWriter.RUNTIME.context;\n");
+	out.append("\tif (args.length == 2 && args[0].equals(\"--flush\"))\n");
+	out.append("\t    context.streams.policy(args[1]);\n");
+	out.append("\tcontext.openStandardStreams();\n");
+	out.append("\ttry {\n");
+	for (SycpolParser.Module mod : this.program.modules.values())
+	    out.append("\t    " + this.classes.get(mod) + ".init();\n");
+	if (main != null)
+	    out.append("\t    " + this.methods.get(main.procedures.get("MAIN"))
+		       + "(new SycpolInterpreter.SycpolObject[0]);\n");
+	else
+	    out.append("\t    if (context.verbose) context.err.println(\"NO MAIN PROCEDURE.\");\n");
+	out.append("\t    context.standardOutput.write('\\n');\n");
+	out.append("\t    context.streams.closeAll();\n");
+	out.append("\t} catch (SycpolException ex) {\n");
+	out.append("\t    context.streams.closeAll();\n");
+	out.append("\t    ex.print(context.err, context.verbose);\n");
+	out.append("\t    System.exit(1);\n");
+	out.append("\t} catch (Exception ex) {\n");
+	out.append("\t    context.streams.closeAll();\n");
+	out.append("\t    context.err.println(\"SCIM ERROR:\\nILLEGAL BUG.\");\n");
+	out.append("\t    ex.printStackTrace();\n");
+	out.append("\t}\n");
+	out.append("    }\n");
+	out.append("}\n");
+	return out.toString();
+    }
+
+    private String generate(SycpolParser.Module mod) {
+	StringBuilder out = new StringBuilder();
+	String cls = this.classes.get(mod);
+	List<String> decls = new ArrayList<>();
+
+	// Module variables are static fields named after their slots.
+	StringBuilder init = new StringBuilder();
+	for (Variable v : mod.variables)
+	    init.append("\tg" + v.slot + " = " + declaration(decls, v) + ".createObject(RT);\n");
+
+	StringBuilder procs = new StringBuilder();
+	for (Procedure proc : mod.procedures.values())
+	    generate(procs, proc, decls);
+
+	out.append("package sycpol;\n\n");
+	out.append("import sycpol.SycpolInterpreter.SycpolObject;\n\n");
+	out.append("// " + mod.name + "\n");
+	out.append("public class " + cls + " {\n");
+	out.append("    static final SycpolInterpreter RT = SycpolClassWriter.RUNTIME;\n\n");
+	for (int i = 0; i < decls.size(); i++)
+	    out.append("    static final SycpolParser.Declaration d" + i + " = " + decls.get(i) + ";\n");
+	out.append("\n");
+	for (int i = 0; i < mod.slots; i++)
+	    out.append("    static SycpolObject g" + i + ";\n");
+	out.append("\n    static void init() {\n");
+	out.append(init);
+	out.append("    }\n");
+	out.append(procs);
+	out.append("}\n");
+	return out.toString();
+    }
+
+    private String declaration(List<String> decls, Declaration decl) {
+	decls.add("SycpolClassWriter.declaration("
+		  + literal(decl.name) + ", "
+		  + literal(decl.datatype.name) + ", "
+		  + literal(decl.value) + ")");
+	return "d" + (decls.size()-1);
+    }
+
+    private void generate(StringBuilder out, Procedure proc, List<String> decls) {
+	String method = this.methods.get(proc);
+	method = method.substring(method.indexOf('.')+1);
+
+	out.append("\n    // " + proc.name + "\n");
+	out.append("    static void " + method + "(SycpolObject[] args) {\n");
+	for (int i = 0; i < proc.slots; i++)
+	    out.append("\tSycpolObject l" + i + " = null;\n");
+	// Streams opened by the variables are released on return.
+	boolean streams = false;
+	for (Variable v : proc.variables)
+	    if (v.datatype.isStream()) streams = true;
+	if (streams)
+	    out.append("\tlong streams = RT.context.streams.mark();\n");
+	for (Variable v : proc.variables)
+	    out.append("\tl" + v.slot + " = " + declaration(decls, v) + ".createObject(RT);\n");
+	out.append("\tif (args.length != " + proc.parameters.size() + ")\n");
+	out.append("\t    Sycpol.exit(\"ARGUMENT ERROR: WRONG NUMBER OF ARGUMENTS.\", \"GOT: \" + args.length, \"REQUIRED: "
+		   + proc.parameters.size() + "\");\n");
+	for (int i = 0; i < proc.parameters.size(); i++)
+	    out.append("\tl" + proc.parameters.get(i).slot + " = args[" + i + "].own();\n");
+
+	out.append("\tshort ip = 1;\n");
+	out.append("\twhile (true) {\n");
+	out.append("\t    switch (ip) {\n");
+	for (Instruction ins : proc.code) {
+	    out.append("\t    case " + ins.line + ":\n");
+	    if (streams && ins.op == Op.RETURN)
+		out.append("\t\tRT.context.streams.release(streams);\n");
+	    String s = statement(ins);
+	    if (s.length() != 0) out.append("\t\t" + s + "\n");
+	    if (ins.op == Op.JUMP
+		|| ins.op == Op.RETURN
+		|| ins.op == Op.FAILURE) continue;
+	    if (ins.next == -1)
+		out.append("\t\tip = " + (short) (ins.line+1) + ";\n\t\tcontinue;\n");
+	}
+	out.append("\t    default:\n");
+	out.append("\t\tSycpol.exit(\"PROGRAM ERROR: LINE NOT FOUND.\", \"LINE: \" + ip);\n");
+	out.append("\t\treturn;\n");
+	out.append("\t    }\n");
+	out.append("\t}\n");
+	out.append("    }\n");
+    }
+
+    private String statement(Instruction ins) {
+	switch (ins.op) {
+	case CHANGE:
+	    return "{ SycpolObject to = " + value(ins.value) + "; "
+		+ variable(ins.object) + ".assign(to); }";
+	case CHANGE_FIELD:
+	    return value(ins.object) + ".setField(" + literal(ins.name) + ", "
+		+ value(ins.value) + ".copy());";
+	case INCREMENT:
+	    return variable(ins.object) + ".increment();";
+	case DECREMENT:
+	    return variable(ins.object) + ".decrement();";
+	case INCREMENT_FIELD:
+	    return value(ins.object) + ".getField(" + literal(ins.name) + ").increment();";
+	case DECREMENT_FIELD:
+	    return value(ins.object) + ".getField(" + literal(ins.name) + ").decrement();";
+	case SEND:
+	    return "{ SycpolObject obj = " + value(ins.value) + "; "
+		+ value(ins.object) + ".send(obj); }";
+	case ADD:
+	    return "{ SycpolObject obj = " + expr(ins.value) + "; "
+		+ value(ins.object) + ".add(obj); }";
+	case REMOVE:
+	    return value(ins.object) + ".remove();";
+	case JUMP:
+	    return "ip = " + ins.label + ";\n\t\tcontinue;";
+	case IF:
+	    return "if (" + value(ins.object) + ".equals("
+		+ value(ins.value) + ")) {\n"
+		+ "\t\t    ip = " + ins.label + ";\n\t\t    continue;\n\t\t}";
+	case PROCEED: {
+	    StringBuilder call = new StringBuilder();
+	    call.append(this.methods.get(ins.procedure) + "(new SycpolObject[] {");
+	    for (int i = 0; i < ins.args.length; i++)
+		call.append((i == 0 ? " " : ", ") + expr(ins.args[i]));
+	    call.append(" });");
+	    return call.toString();
+	}
+	case FAILURE:
+	    return "Sycpol.exit(\"RESULT: PROGRAM FAILURE.\");\n\t\treturn;";
+	case RETURN:
+	    return "return;";
+	}
+	return "";
+    }
+
+    private String variable(Expression e) {
+	return "SycpolClassWriter.variable("
+	    + (e.slot != -1 ? "l" + e.slot : "null") + ", "
+	    + (e.global != -1 ? "g" + e.global : "null") + ", "
+	    + literal(e.name) + ")";
+    }
+
+    // An expression whose object may be stored or changed.
+    private String expr(Expression e) {
+	return expr(e, true);
+    }
+
+    // An expression that is only read.
+    private String value(Expression e) {
+	return expr(e, false);
+    }
+
+    private String expr(Expression e, boolean store) {
+	switch (e.kind) {
+	case VARIABLE:
+	    return variable(e);
+	case NEW:
+	    return "RT.new SycpolObject(SycpolType.of(" + literal(e.name) + "))";
+	case NEXT:
+	    return value(e.of) + ".next()";
+	case ELEMENT:
+	case CHARACTER: {
+	    String at = value(e.at);
+	    String of = value(e.of);
+	    String method = e.kind == Kind.CHARACTER ? "getCharAt"
+		: store ? "getElementAt" : "getElementValueAt";
+	    if (e.atFirst)
+		return "SycpolClassWriter." + method + "(" + at + ", " + of + ")";
+	    return of + "." + method + "(" + at + ")";
+	}
+	case FIELD:
+	    return value(e.of) + (store ? ".getField(" : ".getFieldValue(")
+		+ literal(e.name) + ")";
+	}
+	return null;
+    }
+
+    private static String literal(String str) {
+	StringBuilder out = new StringBuilder("\"");
+	for (char chr : str.toCharArray()) {
+	    switch (chr) {
+	    case '"': out.append("\\\""); break;
+	    case '\\': out.append("\\\\"); break;
+	    case '\n': out.append("\\n"); break;
+	    default: out.append(chr);
+	    }
+	}
+	return out.append("\"").toString();
+    }
+
+    // Run time support for the generated classes.
+
+    static final SycpolInterpreter RUNTIME = new SycpolInterpreter(null, new SycpolContext());
+
+    static Declaration declaration(String name, String datatype, String value) {
+	Declaration decl = new Declaration();
+	decl.name = name;
+	decl.datatype = SycpolType.of(datatype);
+	decl.value = value;
+	return decl;
+    }
+
+    static SycpolObject variable(SycpolObject local, SycpolObject global, String name) {
+	if (local != null) return local;
+	if (global == null)
+	    Sycpol.exit("NAME ERROR: VARIABLE NOT FOUND.", "NAME: " + name);
+	return global;
+    }
+
+    static SycpolObject getElementAt(SycpolObject at, SycpolObject in) {
+	return in.getElementAt(at);
+    }
+
+    static SycpolObject getElementValueAt(SycpolObject at, SycpolObject in) {
+	return in.getElementValueAt(at);
+    }
+
+    static SycpolObject getCharAt(SycpolObject at, SycpolObject in) {
+	return in.getCharAt(at);
+    }
+}
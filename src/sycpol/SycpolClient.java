@@ -0,0 +1,77 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolServer;
+
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+// Runs a program on a server started with --server. Standard input is
+// forwarded to the server, and the output and exit status of the run
+// are those of the program.
+public class SycpolClient {
+
+    public static int connect(String socket, String... args) {
+	try {
+	    SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+	    DataInputStream in = new DataInputStream(new BufferedInputStream(SycpolServer.input(channel)));
+	    final DataOutputStream out = new DataOutputStream(SycpolServer.output(channel));
+
+	    out.writeUTF(System.getProperty("user.dir"));
+	    out.writeInt(args.length);
+	    for (String arg : args) out.writeUTF(arg);
+	    out.flush();
+
+	    Thread input = new Thread() {
+		    @Override
+		    public void run() {
+			forward(new FileInputStream(FileDescriptor.in), out);
+		    }
+		};
+	    input.setDaemon(true);
+	    input.start();
+
+	    OutputStream stdout = new FileOutputStream(FileDescriptor.out);
+	    OutputStream stderr = new FileOutputStream(FileDescriptor.err);
+	    byte[] buf = new byte[8192];
+	    while (true) {
+		byte tag = in.readByte();
+		if (tag == SycpolServer.EXIT) return in.readInt();
+		int len = in.readInt();
+		if (buf.length < len) buf = new byte[len];
+		in.readFully(buf, 0, len);
+		(tag == SycpolServer.ERR ? stderr : stdout).write(buf, 0, len);
+	    }
+	} catch (IOException ex) {
+	    Sycpol.exit("IO ERROR: SERVER FAILURE.", "SOCKET: " + socket,
+			"JAVA ERROR: " + ex.toString().toUpperCase());
+	    return 1;
+	}
+    }
+
+    // Sends standard input in frames, and an empty frame at its end.
+    // The server may finish without reading it all.
+    private static void forward(InputStream in, DataOutputStream out) {
+	byte[] buf = new byte[8192];
+	try {
+	    for (int n; (n = in.read(buf)) > 0; ) {
+		out.writeInt(n);
+		out.write(buf, 0, n);
+		out.flush();
+	    }
+	    out.writeInt(0);
+	    out.flush();
+	} catch (IOException ex) {
+	}
+    }
+}
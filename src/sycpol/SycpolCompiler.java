@@ -0,0 +1,349 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+import sycpol.SycpolParser.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+// Translates statements into instructions that can be executed
+// without tokenizing them again.
+public class SycpolCompiler {
+
+    public enum Op {
+	CHANGE, CHANGE_FIELD,
+	INCREMENT, DECREMENT,
+	INCREMENT_FIELD, DECREMENT_FIELD,
+	SEND, ADD, REMOVE,
+	JUMP, IF,
+	PROCEED,
+	RETURN, FAILURE,
+	NOP
+    }
+
+    public enum Kind {
+	VARIABLE, NEW, NEXT, ELEMENT, CHARACTER, FIELD
+    }
+
+    public static class Expression {
+	public Kind kind;
+	public String name;
+	public Expression at;
+	public Expression of;
+	public boolean atFirst;
+
+	// Variable slots in the procedure frame and in the module. A
+	// local that is undefined falls back to the module variable.
+	public int slot = -1;
+	public int global = -1;
+
+	// Set by the linker for A NEW.
+	public Structure structure;
+	public SycpolType type;
+
+	Expression(Kind kind, String name) {
+	    this.kind = kind;
+	    this.name = name;
+	}
+    }
+
+    public static class Instruction {
+	public Op op;
+	public short line;
+	public String source;
+
+	public String name;
+	public Expression object;
+	public Expression value;
+	public Expression[] args;
+	public short label;
+
+	// Indices in the procedure's code of the JUMP or IF target and
+	// of the following line, or -1 if there is no such line.
+	public int target = -1;
+	public int next = -1;
+
+	// Set by the linker for PROCEED TO.
+	public Procedure procedure;
+
+	Instruction(Op op, short line, String source) {
+	    this.op = op;
+	    this.line = line;
+	    this.source = source;
+	}
+    }
+
+    public static List<String> tokenize(String stmt) {
+	List<String> in = new ArrayList<>(Arrays.asList(stmt.split(" ")));
+	for (int i = 0; i < in.size(); i++) {
+	    while (in.get(i).trim().length() == 0) in.remove(i);
+	    if (in.get(i).indexOf('=') != 0) {
+		int j = i;
+		for (String tok : Arrays.asList(in.remove(i).split("="))) {
+		    in.add(j++, "=");
+		    in.add(j++, tok);
+		}
+		in.remove(i);
+	    }
+	}
+	in.add("( EOF )");
+	return in;
+    }
+
+    public void compile(SycpolParser.Program prog) {
+	for (SycpolParser.Module mod : prog.modules.values()) {
+	    Map<String, Integer> globals = new HashMap<>();
+	    for (Variable v : mod.variables)
+		v.slot = slot(globals, v.name);
+	    mod.slots = globals.size();
+
+	    for (Procedure proc : mod.procedures.values())
+		compile(proc, globals);
+	}
+    }
+
+    public void compile(Procedure proc, Map<String, Integer> globals) {
+	// Parameters are bound after variables and replace variables
+	// of the same name.
+	Map<String, Integer> locals = new HashMap<>();
+	for (Variable v : proc.variables)
+	    v.slot = slot(locals, v.name);
+	for (Parameter p : proc.parameters)
+	    p.slot = slot(locals, p.name);
+	proc.slots = locals.size();
+
+	Map<Short, Integer> index = new HashMap<>();
+	Instruction[] code = new Instruction[proc.statements.size()];
+	int i = 0;
+	for (Map.Entry<Short, String> e
+		 : new TreeMap<>(proc.statements).entrySet()) {
+	    Instruction ins = compile(e.getKey(), e.getValue());
+	    resolve(ins.object, locals, globals);
+	    resolve(ins.value, locals, globals);
+	    if (ins.args != null)
+		for (Expression arg : ins.args)
+		    resolve(arg, locals, globals);
+	    index.put(ins.line, i);
+	    code[i++] = ins;
+	}
+	link(code, index);
+	proc.code = code;
+	proc.entry = index.get((short) 1) != null ? index.get((short) 1) : -1;
+    }
+
+    // Resolves labels to indices in the code. A missing JUMP or IF
+    // target is an error; a missing following line is reported only
+    // if execution reaches it.
+    private void link(Instruction[] code, Map<Short, Integer> index) {
+	for (Instruction ins : code) {
+	    Integer next = index.get((short) (ins.line+1));
+	    if (next != null) ins.next = next;
+	    if (ins.op == Op.JUMP || ins.op == Op.IF) {
+		Integer target = index.get(ins.label);
+		if (target == null)
+		    Sycpol.exit("PROGRAM ERROR: LINE NOT FOUND.", "LINE: " + ins.label);
+		ins.target = target;
+	    }
+	}
+    }
+
+    private static int slot(Map<String, Integer> slots, String name) {
+	if (slots.get(name) == null)
+	    slots.put(name, slots.size());
+	return slots.get(name);
+    }
+
+    private void resolve(Expression e, Map<String, Integer> locals, Map<String, Integer> globals) {
+	if (e == null) return;
+	if (e.kind == Kind.VARIABLE) {
+	    if (locals.get(e.name) != null) e.slot = locals.get(e.name);
+	    if (globals.get(e.name) != null) e.global = globals.get(e.name);
+	    if (e.slot == -1 && e.global == -1)
+		Sycpol.exit("NAME ERROR: VARIABLE NOT FOUND.", "NAME: " + e.name);
+	}
+	resolve(e.at, locals, globals);
+	resolve(e.of, locals, globals);
+    }
+
+    private String next(List<String> in) {
+	return in.remove(0);
+    }
+
+    private String seek(List<String> in) {
+	return in.get(0);
+    }
+
+    private void accept(String expected, List<String> in) {
+	String token = next(in);
+	if (!token.equals(expected)) {
+	    Sycpol.exit("SYNTAX ERROR: UNEXPECTED TOKEN.", "TOKEN: " + token, "EXPECTED: " + expected);
+	}
+    }
+
+    private short label(List<String> in) {
+	String label = next(in);
+	if (!label.startsWith("(") || !label.endsWith(")")) {
+	    Sycpol.exit("SYNTAX ERROR: INVALID LABEL.");
+	}
+	try {
+	    return Short.parseShort(label.substring(1, label.length()-1));
+	} catch (NumberFormatException ex) {
+	    Sycpol.exit("SYNTAX ERROR: INVALID LABEL.");
+	    return -1;
+	}
+    }
+
+    Instruction compile(short line, String stmt) {
+	List<String> in = tokenize(stmt);
+	Instruction ins;
+
+	switch (seek(in)) {
+	case "CHANGE": {
+	    accept("CHANGE", in);
+	    if (seek(in).equals("THE")) {
+		accept("THE", in);
+		ins = new Instruction(Op.CHANGE_FIELD, line, stmt);
+		ins.name = next(in);
+		accept("OF", in);
+		ins.object = expr(in);
+		accept("TO", in);
+		ins.value = expr(in);
+	    }
+	    else {
+		ins = new Instruction(Op.CHANGE, line, stmt);
+		ins.object = variable(in);
+		accept("TO", in);
+		ins.value = expr(in);
+	    }
+	    return ins;}
+	case "INCREMENT":
+	case "DECREMENT": {
+	    boolean increment = next(in).equals("INCREMENT");
+	    if (seek(in).equals("THE")) {
+		accept("THE", in);
+		ins = new Instruction(increment
+				      ? Op.INCREMENT_FIELD
+				      : Op.DECREMENT_FIELD, line, stmt);
+		ins.name = next(in);
+		accept("OF", in);
+		ins.object = expr(in);
+	    }
+	    else {
+		ins = new Instruction(increment
+				      ? Op.INCREMENT
+				      : Op.DECREMENT, line, stmt);
+		ins.object = variable(in);
+	    }
+	    return ins;}
+	case "SEND": {
+	    accept("SEND", in);
+	    ins = new Instruction(Op.SEND, line, stmt);
+	    ins.value = expr(in);
+	    accept("TO", in);
+	    ins.object = expr(in);
+	    return ins;}
+	case "ADD": {
+	    accept("ADD", in);
+	    ins = new Instruction(Op.ADD, line, stmt);
+	    ins.value = expr(in);
+	    accept("TO", in);
+	    ins.object = expr(in);
+	    return ins;}
+	case "REMOVE": {
+	    accept("REMOVE", in);
+	    accept("FROM", in);
+	    ins = new Instruction(Op.REMOVE, line, stmt);
+	    ins.object = expr(in);
+	    return ins;}
+	case "JUMP": {
+	    accept("JUMP", in);
+	    ins = new Instruction(Op.JUMP, line, stmt);
+	    ins.label = label(in);
+	    return ins;}
+	case "IF": {
+	    accept("IF", in);
+	    ins = new Instruction(Op.IF, line, stmt);
+	    ins.object = expr(in);
+	    accept("=", in);
+	    ins.value = expr(in);
+	    ins.label = label(in);
+	    return ins;}
+	case "PROCEED": {
+	    accept("PROCEED", in);
+	    accept("TO", in);
+	    ins = new Instruction(Op.PROCEED, line, stmt);
+	    ins.name = next(in);
+	    if (!ins.name.startsWith("!"))
+		Sycpol.exit("SYNTAX ERROR: INVALID PROCEDURE REFERENCE.");
+	    accept("WITH", in);
+	    List<Expression> pargs = new ArrayList<>();
+	    while (!seek(in).equals("( EOF )")) pargs.add(expr(in));
+	    ins.args = pargs.toArray(new Expression[pargs.size()]);
+	    return ins;}
+	case "RETURN": {
+	    accept("RETURN", in);
+	    accept("WITH", in);
+	    if (seek(in).equals("FAILURE"))
+		return new Instruction(Op.FAILURE, line, stmt);
+	    accept("SUCCESS", in);
+	    return new Instruction(Op.RETURN, line, stmt);
+	}
+	}
+	return new Instruction(Op.NOP, line, stmt);
+    }
+
+    private Expression variable(List<String> in) {
+	String var = next(in);
+	if (!var.startsWith("$"))
+	    Sycpol.exit("SYNTAX ERROR: VARIABLE EXPECTED.", "GOT: " + var);
+	return new Expression(Kind.VARIABLE, var);
+    }
+
+    private Expression expr(List<String> in) {
+	if (seek(in).equals("A")) {
+	    accept("A", in);
+	    accept("NEW", in);
+	    return new Expression(Kind.NEW, next(in));
+	}
+	if (!seek(in).equals("THE")) {
+	    return new Expression(Kind.VARIABLE, next(in));
+	}
+
+	accept("THE", in);
+	if (seek(in).equals("NEXT")) {
+	    accept("NEXT", in);
+	    accept("FROM", in);
+	    Expression e = new Expression(Kind.NEXT, null);
+	    e.of = expr(in);
+	    return e;
+	}
+	if (seek(in).equals("ELEMENT") || seek(in).equals("CHARACTER")) {
+	    Expression e = new Expression(next(in).equals("ELEMENT")
+					  ? Kind.ELEMENT
+					  : Kind.CHARACTER, null);
+	    if (seek(in).equals("AT")) {
+		accept("AT", in);
+		e.atFirst = true;
+		e.at = expr(in);
+		accept("IN", in);
+		e.of = expr(in);
+	    }
+	    else {
+		accept("IN", in);
+		e.of = expr(in);
+		accept("AT", in);
+		e.at = expr(in);
+	    }
+	    return e;
+	}
+	Expression e = new Expression(Kind.FIELD, next(in));
+	accept("OF", in);
+	e.of = expr(in);
+	return e;
+    }
+}
@@ -0,0 +1,78 @@
+package sycpol;
+
+import sycpol.SycpolParser;
+import sycpol.SycpolStreams;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+// The state of one run: options, streams and the files it read.
+// Parsed programs hold no run state, so runs with their own contexts
+// may share a program and execute at the same time.
+public class SycpolContext {
+
+    public boolean verbose = false, debug = false, reference = false;
+
+    // Number of threads reading the cards of a -f directory.
+    public int loadThreads = Runtime.getRuntime().availableProcessors();
+
+    // The most procedure calls that may be in progress at once.
+    public int maxDepth = 1 << 20;
+
+    // Counts and times of a run with --profile, or null.
+    public SycpolProfile profile;
+
+    // The last steps of a run with --trace, or null.
+    public SycpolTrace trace;
+
+    // Directory that relative paths start from, or null for the
+    // working directory.
+    public File directory;
+
+    // Where debug output and error messages go.
+    public PrintStream out = System.out, err = System.err;
+
+    // The streams of OPEN STANDARD INPUT and OUTPUT.
+    public InputStream standardInput;
+    public OutputStream standardOutput;
+
+    public final SycpolStreams streams = new SycpolStreams();
+
+    // The linked program. A server sets it before the run to skip
+    // loading the cards.
+    public SycpolParser.Program program;
+
+    // Modification times of the card files and directories read.
+    public final Map<File, Long> files = new ConcurrentHashMap<>();
+
+    // Sets the standard streams of the program.
+    public void open(InputStream in, OutputStream out) {
+	this.standardInput = this.streams.standardInput(in);
+	this.standardOutput = this.streams.standardOutput(out);
+    }
+
+    // Uses the standard streams of the process.
+    public void openStandardStreams() {
+	this.open(new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out));
+    }
+
+    public File file(String path) {
+	File file = new File(path);
+	if (this.directory != null && !file.isAbsolute())
+	    file = new File(this.directory, path);
+	return file;
+    }
+
+    // Records a card file or directory the program is read from.
+    public void read(File file) {
+	this.files.put(file, file.lastModified());
+    }
+}
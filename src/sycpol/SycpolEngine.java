@@ -0,0 +1,168 @@
+package sycpol;
+
+import sycpol.CardParser;
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+// Loads and runs programs inside another Java program:
+//
+//     SycpolEngine engine = new SycpolEngine();
+//     engine.loadFile("examples/stdio");
+//     engine.loadFile("examples/hello");
+//     SycpolParser.Program prog = engine.parse();
+//     engine.link(prog);
+//     SycpolEngine.Result result = engine.run(prog, in, out);
+//
+// Errors are thrown as SycpolException and never exit the JVM. An
+// engine runs one program at a time in its context. A linked program
+// can be run any number of times, also by several engines at once.
+public class SycpolEngine {
+
+    public static class Result {
+	// Whether a MAIN procedure was found and run.
+	public boolean main;
+	// The error that ended the program, or null if it finished.
+	public SycpolException error;
+
+	// The exit status of the command line.
+	public int status() {
+	    return this.error == null ? 0 : 1;
+	}
+    }
+
+    public final SycpolContext context;
+    private CardParser cards = new CardParser();
+    // Held while a program runs. Not synchronized, since programs
+    // block in I/O and may run on virtual threads.
+    private final ReentrantLock running = new ReentrantLock();
+
+    public SycpolEngine() {
+	this(new SycpolContext());
+    }
+
+    public SycpolEngine(SycpolContext context) {
+	this.context = context;
+    }
+
+    // Loads a card file.
+    public void loadCard(String path) {
+	SycpolEvents.Phase event = new SycpolEvents.Phase("LOAD", path);
+	event.begin();
+	try {
+	    this.cards.loadCard(Sycpol.readFile(path, this.context));
+	} catch (IOException ex) {
+	    Sycpol.exit("IO ERROR: " + ex.toString().toUpperCase(), "NAME: " + path);
+	}
+	this.loaded(event);
+    }
+
+    public void loadCard(List<String> lines) {
+	this.cards.loadCard(lines);
+    }
+
+    // Loads a tape file of several cards.
+    public void loadTape(String path) {
+	SycpolEvents.Phase event = new SycpolEvents.Phase("LOAD", path);
+	event.begin();
+	try {
+	    this.cards.loadTape(Sycpol.readFile(path, this.context));
+	} catch (IOException ex) {
+	    Sycpol.exit("IO ERROR: " + ex.toString().toUpperCase(), "NAME: " + path);
+	}
+	this.loaded(event);
+    }
+
+    public void loadTape(List<String> lines) {
+	this.cards.loadTape(lines);
+    }
+
+    // Loads the numbered cards of a directory.
+    public void loadFile(String path) {
+	SycpolEvents.Phase event = new SycpolEvents.Phase("LOAD", path);
+	event.begin();
+	try {
+	    Sycpol.loadFile(path, this.cards, this.context);
+	} catch (IOException ex) {
+	    Sycpol.exit("IO ERROR: " + ex.toString().toUpperCase());
+	}
+	this.loaded(event);
+    }
+
+    // Records the loading of cards, with the number of lines loaded so
+    // far.
+    private void loaded(SycpolEvents.Phase event) {
+	event.end();
+	if (!event.shouldCommit()) return;
+	event.lines = this.cards.getLines().size();
+	event.commit();
+    }
+
+    // The program lines of the loaded cards.
+    public Queue<String> lines() {
+	return this.cards.getLines();
+    }
+
+    public SycpolParser.Program parse() {
+	return parse(this.lines());
+    }
+
+    public static SycpolParser.Program parse(Queue<String> lines) {
+	SycpolEvents.Phase event = new SycpolEvents.Phase("PARSE", null);
+	event.lines = lines.size();
+	event.begin();
+	SycpolParser.Program prog = new SycpolParser.Program();
+	prog.parse(lines);
+	event.commit();
+	return prog;
+    }
+
+    // Compiles and links a program, so that later runs start at once.
+    public void link(SycpolParser.Program prog) {
+	SycpolEvents.Phase event = new SycpolEvents.Phase("LINK", null);
+	event.begin();
+	new SycpolInterpreter(prog, this.context).prepare();
+	event.commit();
+    }
+
+    // Runs a program with the given standard input and output. Output
+    // is flushed before this returns, also when the program fails.
+    public Result run(SycpolParser.Program prog, InputStream in, OutputStream out) {
+	this.running.lock();
+	try {
+	    this.context.open(in, out);
+	    return this.run(prog);
+	} finally {
+	    this.running.unlock();
+	}
+    }
+
+    // Runs a program with the standard streams of the context.
+    public Result run(SycpolParser.Program prog) {
+	Result result = new Result();
+	this.running.lock();
+	try {
+	    result.main = new SycpolInterpreter(prog, this.context).interpret();
+	    this.context.standardOutput.write('\n');
+	} catch (SycpolException ex) {
+	    result.error = ex;
+	} catch (IOException ex) {
+	    result.error = new SycpolException("IO ERROR: " + ex.toString().toUpperCase());
+	} catch (RuntimeException ex) {
+	    result.error = new SycpolException("SCIM ERROR: ILLEGAL BUG.",
+					       "JAVA ERROR: " + ex.toString().toUpperCase());
+	    result.error.initCause(ex);
+	} finally {
+	    this.context.streams.closeAll();
+	    this.running.unlock();
+	}
+	return result;
+    }
+}
@@ -0,0 +1,134 @@
+package sycpol;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// Flight Recorder events of the interpreter. They are all disabled
+// until a recording enables them, e.g. with the settings in sycpol.jfc:
+//
+//     -XX:StartFlightRecording:settings=default,settings=sycpol.jfc
+//
+// A disabled event is only an allocation that the JIT removes, so the
+// frequent ones are created and committed without checks. Calls and
+// flushes are recorded only when they take at least 1 ms unless the
+// recording sets a lower threshold.
+public class SycpolEvents {
+
+    @Name("sycpol.Procedure")
+    @Label("Procedure Call")
+    @Category("SYCPOL")
+    @Enabled(false)
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class Procedure extends Event {
+	@Label("Module")
+	@Description("Module whose variables the procedure uses")
+	public String module;
+	@Label("Procedure")
+	public String procedure;
+
+	void commit(String module, String procedure) {
+	    this.end();
+	    if (!this.shouldCommit()) return;
+	    this.module = module;
+	    this.procedure = procedure;
+	    this.commit();
+	}
+    }
+
+    @Name("sycpol.Resolve")
+    @Label("External Procedure Resolution")
+    @Category("SYCPOL")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Resolve extends Event {
+	@Label("Module")
+	public String module;
+	@Label("Procedure")
+	public String procedure;
+	@Label("Module Name")
+	public String target;
+	@Label("Identifier")
+	public String identifier;
+    }
+
+    @Name("sycpol.Phase")
+    @Label("Load Phase")
+    @Category("SYCPOL")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Phase extends Event {
+	@Label("Phase")
+	@Description("LOAD, PARSE or LINK")
+	public String phase;
+	@Label("Source")
+	@Description("Card, tape or directory loaded")
+	public String source;
+	@Label("Lines")
+	public int lines;
+
+	Phase(String phase, String source) {
+	    this.phase = phase;
+	    this.source = source;
+	}
+    }
+
+    @Name("sycpol.StreamOpen")
+    @Label("Stream Open")
+    @Category({"SYCPOL", "Stream"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class StreamOpen extends Event {
+	@Label("Stream")
+	public String stream;
+	@Label("Output")
+	public boolean output;
+    }
+
+    @Name("sycpol.StreamFlush")
+    @Label("Stream Flush")
+    @Category({"SYCPOL", "Stream"})
+    @Enabled(false)
+    @Threshold("1 ms")
+    @StackTrace(false)
+    public static class StreamFlush extends Event {
+	@Label("Stream")
+	public String stream;
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+
+	void commit(String stream, long bytes) {
+	    this.end();
+	    if (!this.shouldCommit()) return;
+	    this.stream = stream;
+	    this.bytes = bytes;
+	    this.commit();
+	}
+    }
+
+    // Bytes sent to or taken from a stream over a run, recorded when
+    // the program exits. The streams count bytes a buffer at a time,
+    // so SEND and THE NEXT FROM are not slowed down.
+    @Name("sycpol.Stream")
+    @Label("Stream Transfer")
+    @Category({"SYCPOL", "Stream"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Stream extends Event {
+	@Label("Stream")
+	public String stream;
+	@Label("Output")
+	public boolean output;
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+    }
+}
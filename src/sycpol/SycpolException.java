@@ -0,0 +1,64 @@
+package sycpol;
+
+import java.util.Arrays;
+import java.util.List;
+
+import java.io.PrintStream;
+
+// An error that ends a program, e.g. "TYPE ERROR: STRING EXPECTED.".
+// The details are only shown in verbose mode.
+public class SycpolException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Kind {
+	ARGUMENT, INDEX_OVERFLOW, IO, NAME, PROGRAM,
+	RESULT, SCIM, STORAGE, SYNTAX, TYPE
+    }
+
+    public final Kind kind;
+    public final List<String> details;
+
+    public SycpolException(String message, String... details) {
+	super(message);
+	this.kind = kind(message);
+	this.details = Arrays.asList(details);
+    }
+
+    // The kind named by the text before the colon, or by the whole
+    // message, e.g. "INDEX OVERFLOW ERROR.". Other messages are bugs of
+    // the interpreter.
+    private static Kind kind(String message) {
+	int colon = message.indexOf(':');
+	if (colon == -1 && !message.endsWith(" ERROR.")) return Kind.SCIM;
+	String name = colon == -1 ? message.substring(0, message.length() - 1)
+	    : message.substring(0, colon).trim();
+	if (name.endsWith(" ERROR")) name = name.substring(0, name.length() - 6);
+	try {
+	    return Kind.valueOf(name.replace(' ', '_'));
+	} catch (IllegalArgumentException ex) {
+	    return Kind.SCIM;
+	}
+    }
+
+    // Prints the error the way the card terminal shows it: the kind,
+    // then the text in lines of at most 22 characters.
+    public void print(PrintStream err, boolean verbose) {
+	String[] parts = this.getMessage().split(":");
+	if (parts.length < 2) {
+	    err.println("-> SCIM ERROR\nILLEGAL BUG.");
+	    return;
+	}
+	String str = parts[1].trim();
+	err.println(parts[0]+":");
+	while (str.length() > 22) {
+	    String line = str.substring(0, 21);
+	    err.println(line+"\\");
+	    str = str.substring(21).trim();
+	}
+	err.println(str);
+
+	if (verbose)
+	    for (String m : this.details) err.println(m);
+    }
+}
@@ -2,12 +2,13 @@ package sycpol;
 
 import sycpol.SycpolParser;
 import sycpol.SycpolParser.*;
+import sycpol.SycpolCompiler.*;
 
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Arrays;
+import java.util.List;
 
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -15,152 +16,123 @@ import java.io.IOException;
 
 class SycpolInterpreter {
 
-    public boolean checkTypes(String from, String to) {
-	if (from.equals(to)) return true;
-	if (from.equals(SycpolParser.INTEGER8)
-	    && to.equals(SycpolParser.INTEGER16)) return true;
-	if (to.equals(SycpolParser.STREAM)
-	    && (
-		from.equals(SycpolParser.IOSTREAM)
-		|| from.equals(SycpolParser.ISTREAM)
-		|| from.equals(SycpolParser.OSTREAM)
-		)) return true;
-	return false;
+    public boolean checkTypes(SycpolType from, SycpolType to) {
+	return from.assignableTo(to);
     }
 
-    public String simpleType(String typename) {
-	if (typename.startsWith("+")) return "LIST";
-	if (typename.startsWith("%")) return typename;
-	if (typename.equals(SycpolParser.INTEGER16)
-	    || typename.equals(SycpolParser.INTEGER8))
-	    return "INTEGER";
-	if (typename.equals(SycpolParser.STRING32)
-	    || typename.equals(SycpolParser.STRING16)
-	    || typename.equals(SycpolParser.STRING8))
-	    return "STRING";
-	if (typename.equals(SycpolParser.IOSTREAM)
-	    || typename.equals(SycpolParser.ISTREAM)
-	    || typename.equals(SycpolParser.OSTREAM)
-	    || typename.equals(SycpolParser.STREAM))
-	    return "STREAM";
-	return typename;
+    public String simpleType(SycpolType type) {
+	return type.simpleName();
     }
 
     public class SycpolObject {
-	private HashMap<String, SycpolObject> fields = new HashMap<>();
-	private ArrayList<SycpolObject> list = new ArrayList<>();
+	private HashMap<String, SycpolObject> fields;
+	private SycpolList list;
 	private String value_str;
 	private byte value_i8;
 	private short value_i16;
 	private OutputStream value_out;
 	private InputStream value_in;
 
-	private String type;
+	private SycpolType type;
 	private Structure struct;
-	private HashMap<String, String> fieldtypes = new HashMap<>();
+	private HashMap<String, SycpolType> fieldtypes;
+	// Cached integers and other temporaries are shared and never
+	// changed in place.
+	private boolean shared;
+	// The list or fields may be shared with a copy of this object
+	// and are cloned before they are changed.
+	private boolean sharedContents;
 
 	SycpolObject(short val) {
-	    this.type = SycpolParser.INTEGER16;
+	    this.type = SycpolType.INTEGER16;
 	    this.value_i16 = val;
 	}
 
 	SycpolObject(byte val) {
-	    this.type = SycpolParser.INTEGER8;
+	    this.type = SycpolType.INTEGER8;
 	    this.value_i8 = val;
 	}
 
-	SycpolObject(String type, String val) {
+	SycpolObject(SycpolType type, String val) {
 	    this.type = type;
 	    this.value_str = val;
-	    if (type.equals(SycpolParser.STRING8)
-		&& val.length() > 8)
-		Sycpol.exit("STORAGE ERROR: STRING OVERFLOW.");
-	    if (type.equals(SycpolParser.STRING16)
-		&& val.length() > 16)
-		Sycpol.exit("STORAGE ERROR: STRING OVERFLOW.");
-	    if (type.equals(SycpolParser.STRING32)
-		&& val.length() > 32)
+	    if (type.isString()
+		&& val.length() > type.length())
 		Sycpol.exit("STORAGE ERROR: STRING OVERFLOW.");
 	}
 
-	SycpolObject(String type, InputStream in, OutputStream out) {
+	SycpolObject(SycpolType type, InputStream in, OutputStream out) {
 	    this.type = type;
 	    this.value_in = in;
 	    this.value_out = out;
-	    if (type.equals(SycpolParser.ISTREAM)
+	    if (type == SycpolType.ISTREAM
 		&& in == null)
 		Sycpol.exit("TYPE ERROR: CLOSED INPUT STREAM.");
-	    if (type.equals(SycpolParser.ISTREAM)
+	    if (type == SycpolType.ISTREAM
 		&& out != null)
 		Sycpol.exit("TYPE ERROR: OPEN OUTPUT STREAM.");
-	    if (type.equals(SycpolParser.OSTREAM)
+	    if (type == SycpolType.OSTREAM
 		&& out == null)
 		Sycpol.exit("TYPE ERROR: CLOSED OUTPUT STREAM.");
-	    if (type.equals(SycpolParser.OSTREAM)
+	    if (type == SycpolType.OSTREAM
 		&& in != null)
 		Sycpol.exit("TYPE ERROR: OPEN INPUT STREAM.");
 	}
 
-	SycpolObject(String type, Structure struct) {
+	SycpolObject(SycpolType type, Structure struct) {
 	    this.type = type;
 	    this.struct = struct;
+	    this.fields = new HashMap<>();
+	    this.fieldtypes = new HashMap<>();
 	    for (Field f : struct.fields)
 		this.fieldtypes.put(f.name, f.datatype);
 	}
 
-	SycpolObject(String type) {
+	SycpolObject(SycpolType type) {
 	    this.type = type;
+	    if (type.isList()) this.list = new SycpolList(type.element);
+	    if (type.isStructure()) this.fields = new HashMap<>();
 	}
 
 	public boolean isStructure() {
-	    return this.type.startsWith("%");
+	    return this.type.isStructure();
 	}
 
 	public boolean isList() {
-	    return this.type.startsWith("+");
+	    return this.type.isList();
 	}
 
 	public boolean isString() {
-	    return this.type.equals(SycpolParser.STRING8)
-		|| this.type.equals(SycpolParser.STRING16)
-		|| this.type.equals(SycpolParser.STRING32);
+	    return this.type.isString();
 	}
 
 	public boolean isInteger() {
-	    return this.type.equals(SycpolParser.INTEGER8)
-		|| this.type.equals(SycpolParser.INTEGER16);
+	    return this.type.isInteger();
 	}
 
 	public boolean isByte() {
-	    return this.type.equals(SycpolParser.INTEGER8);
+	    return this.type == SycpolType.INTEGER8;
 	}
 
 	public boolean isShort() {
-	    return this.type.equals(SycpolParser.INTEGER16);
+	    return this.type == SycpolType.INTEGER16;
 	}
 
 	public boolean isStream() {
-	    return this.type.equals(SycpolParser.STREAM)
-		|| this.type.equals(SycpolParser.ISTREAM)
-		|| this.type.equals(SycpolParser.OSTREAM)
-		|| this.type.equals(SycpolParser.IOSTREAM);
+	    return this.type.isStream();
 	}
 
 	public boolean isOStream() {
-	    return this.type.equals(SycpolParser.STREAM)
-		|| this.type.equals(SycpolParser.OSTREAM)
-		|| this.type.equals(SycpolParser.IOSTREAM);
+	    return this.type.isOStream();
 	}
 
 	public boolean isIStream() {
-	    return this.type.equals(SycpolParser.STREAM)
-		|| this.type.equals(SycpolParser.ISTREAM)
-		|| this.type.equals(SycpolParser.IOSTREAM);
+	    return this.type.isIStream();
 	}
 
 	public int integerValue() {
-	    if (this.type.equals(SycpolParser.INTEGER8)) return this.value_i8;
-	    if (this.type.equals(SycpolParser.INTEGER16)) return this.value_i16;
+	    if (this.type == SycpolType.INTEGER8) return this.value_i8;
+	    if (this.type == SycpolType.INTEGER16) return this.value_i16;
 	    return 0;
 	}
 
@@ -177,7 +149,7 @@ class SycpolInterpreter {
 
 	    // fields and lists
 	    if (this.isStructure()) {
-		if (this.fieldtypes.get(name) == null) {
+		if (this.fieldType(name) == null) {
 		    Sycpol.exit("NAME ERROR: FIELD NOT FOUND.", "NAME: " + name, "STRUCTURE: " + this.type);
 		}
 		return this.fields.get(name);
@@ -190,14 +162,14 @@ class SycpolInterpreter {
 		case "LAST":
 		    return this.list.get(this.list.size()-1);
 		case "LENGTH":
-		    return new SycpolObject((short) this.list.size());
+		    return integer((short) this.list.size());
 		}
 	    }
 
 	    if (this.isString()) {
 		switch (name) {
 		case "LENGTH":
-		    return new SycpolObject((byte) this.value_str.length());
+		    return integer((byte) this.value_str.length());
 		}
 	    }
 
@@ -206,12 +178,26 @@ class SycpolInterpreter {
 	    return null;
 	}
 
+	// Like getField, but the FIRST or LAST element of a list is
+	// only read and need not be materialized.
+	public SycpolObject getFieldValue(String name) {
+	    if (this.isList()) {
+		switch (name) {
+		case "FIRST":
+		    return this.list.value(0);
+		case "LAST":
+		    return this.list.value(this.list.size()-1);
+		}
+	    }
+	    return this.getField(name);
+	}
+
 	public void setField(String name, SycpolObject to) {
 	    if (!this.isStructure())
 		Sycpol.exit("TYPE ERROR: STRUCTURE EXPECTED.",
 			    "GOT: " + this.type);
 
-	    if (this.fieldtypes.get(name) == null) {
+	    if (this.fieldType(name) == null) {
 		Sycpol.exit("NAME ERROR: FIELD NOT FOUND.", "NAME: " + name, "STRUCTURE: " + this.type);
 	    }
 
@@ -220,8 +206,13 @@ class SycpolInterpreter {
 			    "EXPECTED: " + this.fieldtypes.get(name),
 			    "GOT: " + to.type);
 
+	    this.unshare();
 	    this.fields.put(name, to);
 	}
+
+	private SycpolType fieldType(String name) {
+	    return this.fieldtypes == null ? null : this.fieldtypes.get(name);
+	}
 	
 	public SycpolObject getCharAt(SycpolObject at) {
 	    SycpolObject in = this;
@@ -234,10 +225,19 @@ class SycpolInterpreter {
 	    if (at.integerValue() >= in.value_str.length())
 		Sycpol.exit("INDEX OVERFLOW ERROR.");
 
-	    return new SycpolObject((byte) in.value_str.charAt(at.integerValue()));
+	    return integer((byte) in.value_str.charAt(at.integerValue()));
 	}
 
 	public SycpolObject getElementAt(SycpolObject at) {
+	    return this.list.get(this.elementIndex(at));
+	}
+
+	// Like getElementAt, for an element that is only read.
+	public SycpolObject getElementValueAt(SycpolObject at) {
+	    return this.list.value(this.elementIndex(at));
+	}
+
+	private int elementIndex(SycpolObject at) {
 	    SycpolObject in = this;
 
 	    if (!at.isInteger()) Sycpol.exit("TYPE ERROR: INTEGER EXPECTED.",
@@ -248,13 +248,15 @@ class SycpolInterpreter {
 	    if (at.integerValue() >= in.list.size())
 		Sycpol.exit("INDEX OVERFLOW ERROR.");
 
-	    return in.list.get(at.integerValue());
+	    return at.integerValue();
 	}
 
 	public void add(SycpolObject val) {
 	    if (!this.isList()) Sycpol.exit("TYPE ERROR: LIST EXPECTED.",
 					    "GOT: " + this.type);
 
+	    this.unshare();
+	    val.escape();
 	    this.list.add(val);
 	}
 
@@ -262,7 +264,8 @@ class SycpolInterpreter {
 	    if (!this.isList()) Sycpol.exit("TYPE ERROR: LIST EXPECTED.",
 					    "GOT: " + this.type);
 
-	    return this.list.remove(this.list.size()-1);
+	    this.unshare();
+	    return this.list.remove();
 	}
 
 	public void send(SycpolObject val) {
@@ -272,6 +275,8 @@ class SycpolInterpreter {
 			    "GOT: " + this.type);
 	    if (!val.isByte()) Sycpol.exit("TYPE ERROR: INTEGER 8 EXPECTED.");
 
+	    if (context.trace != null)
+		context.trace.record(SycpolTrace.SEND, 0, val.integerValue());
 	    try {
 		this.value_out.write(val.integerValue());
 	    } catch (IOException ex) {
@@ -285,7 +290,10 @@ class SycpolInterpreter {
 					       "GOT: " + this.type);
 	    
 	    try {
-		return new SycpolObject((byte) this.value_in.read());
+		SycpolObject val = integer((byte) this.value_in.read());
+		if (context.trace != null)
+		    context.trace.record(SycpolTrace.NEXT, 0, val.integerValue());
+		return val;
 	    
 	    } catch (IOException ex) {
 		Sycpol.exit("IO ERROR: " + ex.getMessage().toUpperCase());
@@ -296,6 +304,8 @@ class SycpolInterpreter {
 	public void increment() {
 	    if (!this.isInteger()) Sycpol.exit("TYPE ERROR: INTEGER EXPECTED.",
 					       "GOT: " + this.type);
+	    // A cached value is always a temporary.
+	    if (this.shared) return;
 	    if (this.isByte()) this.value_i8++;
 	    else this.value_i16++;
 	}
@@ -303,22 +313,60 @@ class SycpolInterpreter {
 	public void decrement() {
 	    if (!this.isInteger()) Sycpol.exit("TYPE ERROR: INTEGER EXPECTED.",
 					       "GOT: " + this.type);
+	    if (this.shared) return;
 	    if (this.isByte()) this.value_i8--;
 	    else this.value_i16--;
 	}
 
+	private SycpolObject() {
+	}
+
 	public SycpolObject copy() {
-	    SycpolObject n = new SycpolObject(this.type);
+	    SycpolObject n = new SycpolObject();
+	    n.type = this.type;
 	    n.value_i8 = this.value_i8;
 	    n.value_i16 = this.value_i16;
 	    n.value_str = this.value_str;
 	    n.value_in = this.value_in;
 	    n.value_out = this.value_out;
-	    n.fields = (HashMap<String, SycpolObject>) this.fields.clone();
-	    n.list = (ArrayList<SycpolObject>) this.list.clone();
+	    this.escape();
+	    n.fields = this.fields;
+	    n.list = this.list;
+	    if (this.fields != null || this.list != null) {
+		n.sharedContents = true;
+		this.sharedContents = true;
+	    }
 	    return n;
 	}
 
+	private void unshare() {
+	    if (!this.sharedContents) return;
+	    if (this.fields != null)
+		this.fields = new HashMap<>(this.fields);
+	    if (this.list != null)
+		this.list = this.list.copy();
+	    this.sharedContents = false;
+	}
+
+	// Streams held by more than one object, or by a list, are kept
+	// open until the program exits.
+	private void escape() {
+	    if (this.value_in != null || this.value_out != null)
+		SycpolStreams.escape(this.value_in, this.value_out);
+	}
+
+	// Returns this object, or a copy of it if it is shared, so that
+	// it can be stored and changed.
+	public SycpolObject own() {
+	    return this.shared ? this.copy() : this;
+	}
+
+	// CHANGE: integers, strings and streams are copied into place;
+	// lists and structures get their own copy of the contents.
+	public void assign(SycpolObject to) {
+	    this.change(to.list != null || to.fields != null ? to.copy() : to);
+	}
+
 	public void change(SycpolObject to) {
 	    if (!checkTypes(to.type, this.type))
 		Sycpol.exit("TYPE ERROR: " + simpleType(this.type) + " EXPECTED.",
@@ -330,8 +378,10 @@ class SycpolInterpreter {
 	    this.value_str = to.value_str;
 	    this.value_in = to.value_in;
 	    this.value_out = to.value_out;
+	    to.escape();
 	    this.fields = to.fields;
 	    this.list = to.list;
+	    this.sharedContents = to.sharedContents;
 	    this.struct = to.struct;
 	    this.fieldtypes = to.fieldtypes;
 	}
@@ -345,6 +395,158 @@ class SycpolInterpreter {
 	}
     }
 
+    // Elements of a list. Lists of INTEGER 8 and INTEGER 16 keep their
+    // elements in an array while no element object is needed; once an
+    // element is stored elsewhere or changed, the list switches to
+    // element objects for good. A copy of such a list copies the array.
+    public class SycpolList {
+	private ArrayList<SycpolObject> objects;
+	private byte[] values_i8;
+	private short[] values_i16;
+	private int size;
+
+	SycpolList(SycpolType element) {
+	    if (element == SycpolType.INTEGER8)
+		this.values_i8 = new byte[16];
+	    else if (element == SycpolType.INTEGER16)
+		this.values_i16 = new short[16];
+	    else
+		this.objects = new ArrayList<>();
+	}
+
+	private SycpolList() {
+	}
+
+	int size() {
+	    return this.objects != null ? this.objects.size() : this.size;
+	}
+
+	// The element object, which may be stored or changed.
+	SycpolObject get(int i) {
+	    if (this.objects == null) this.inflate();
+	    return this.objects.get(i);
+	}
+
+	// The element, for reading only.
+	SycpolObject value(int i) {
+	    if (this.objects != null) return this.objects.get(i);
+	    if (i < 0 || i >= this.size)
+		throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + this.size);
+	    if (this.values_i8 != null) return integer(this.values_i8[i]);
+	    return integer(this.values_i16[i]);
+	}
+
+	void add(SycpolObject val) {
+	    // Only temporaries can be stored by value; anything else
+	    // must stay the same object.
+	    if (this.objects == null && val.shared) {
+		if (this.values_i8 != null && val.isByte()) {
+		    if (this.size == this.values_i8.length)
+			this.values_i8 = Arrays.copyOf(this.values_i8, this.size * 2);
+		    this.values_i8[this.size++] = val.value_i8;
+		    return;
+		}
+		if (this.values_i16 != null && val.isShort()) {
+		    if (this.size == this.values_i16.length)
+			this.values_i16 = Arrays.copyOf(this.values_i16, this.size * 2);
+		    this.values_i16[this.size++] = val.value_i16;
+		    return;
+		}
+	    }
+	    if (this.objects == null) this.inflate();
+	    this.objects.add(val.own());
+	}
+
+	SycpolObject remove() {
+	    if (this.objects != null)
+		return this.objects.remove(this.objects.size()-1);
+	    SycpolObject last = this.value(this.size-1);
+	    this.size--;
+	    return last;
+	}
+
+	// A list holding the same element objects, or the same values.
+	SycpolList copy() {
+	    SycpolList n = new SycpolList();
+	    if (this.objects != null)
+		n.objects = new ArrayList<>(this.objects);
+	    else if (this.values_i8 != null)
+		n.values_i8 = Arrays.copyOf(this.values_i8, Math.max(this.size, 16));
+	    else
+		n.values_i16 = Arrays.copyOf(this.values_i16, Math.max(this.size, 16));
+	    n.size = this.size;
+	    return n;
+	}
+
+	private void inflate() {
+	    this.objects = new ArrayList<>(Math.max(this.size, 10));
+	    for (int i = 0; i < this.size; i++)
+		this.objects.add(this.values_i8 != null
+				 ? new SycpolObject(this.values_i8[i])
+				 : new SycpolObject(this.values_i16[i]));
+	    this.values_i8 = null;
+	    this.values_i16 = null;
+	}
+    }
+
+    // A procedure call in progress. Calls are kept on the heap, so the
+    // depth of recursion is limited by --max-depth rather than by the
+    // Java stack.
+    private static class Activation {
+	final Procedure proc;
+	final Activation caller;
+	final int depth;
+	// The module whose variables the procedure uses.
+	final SycpolModule module;
+	SycpolObject[] frame;
+	// The streams opened before the call, so that those its variables
+	// open are released when it returns.
+	long streams;
+	// Where the procedure goes on after the call it is making.
+	int pc;
+	Instruction ins;
+	// Only allocated with --profile, --trace or JFR.
+	Records records;
+
+	Activation(Procedure proc, Activation caller, SycpolModule module) {
+	    this.proc = proc;
+	    this.caller = caller;
+	    this.module = module;
+	    this.depth = caller != null ? caller.depth + 1 : 1;
+	}
+    }
+
+    // The arguments or frame of a call that has none.
+    private static final SycpolObject[] NONE = new SycpolObject[0];
+
+    // What a call keeps for --profile, --trace and JFR.
+    private static class Records {
+	SycpolProfile.Entry entry;
+	long start, outer;
+	// Timing of the line making a call while the callee runs.
+	int last;
+	long started;
+	int tracer;
+	SycpolEvents.Procedure event;
+    }
+
+    // Canonical INTEGER 8 values and small INTEGER 16 values, returned
+    // by operations that produce a new integer.
+    private final SycpolObject[] integer8 = new SycpolObject[256];
+    private final SycpolObject[] integer16 = new SycpolObject[1024];
+
+    SycpolObject integer(byte val) {
+	return this.integer8[val & 0xff];
+    }
+
+    SycpolObject integer(short val) {
+	if (val >= 0 && val < this.integer16.length)
+	    return this.integer16[val];
+	SycpolObject obj = new SycpolObject(val);
+	obj.shared = true;
+	return obj;
+    }
+
     String stringDeclaration(Declaration decl) {
 	SycpolObject obj = decl
 	    .createObject(SycpolInterpreter.this);
@@ -354,112 +556,33 @@ class SycpolInterpreter {
     }
 
     public Program sycpolProgram;
+    public final SycpolContext context;
+    public SycpolLinker linker;
     public Map<String, SycpolModule> modules = new HashMap<>();
 
     public class SycpolModule {
 	public Map<String, SycpolObject> variables = new HashMap<>();
+	public SycpolObject[] globals;
 	public SycpolParser.Module module;
 
 	SycpolModule(SycpolParser.Module module) {
 	    this.module = module;
+	    this.globals = new SycpolObject[module.slots];
 	    // System.err.println(module.variables);
 	    for (int i = 0; i < module.variables.size(); i++) {
-		this.variables.put(module.variables.get(i).name,
-				   module.variables
-				   .get(i)
-				   .createObject(SycpolInterpreter.this));
+		Variable v = module.variables.get(i);
+		SycpolObject obj = v.createObject(SycpolInterpreter.this);
+		this.variables.put(v.name, obj);
+		if (v.slot != -1) this.globals[v.slot] = obj;
 	    }
 	}
 
-	Module getEModule(String name) {
-
-	    for (Module emod : sycpolProgram.modules.values()) {
-		if (stringDeclaration(SycpolParser
-				      .getDeclaration(emod.info,
-						      "IDENTIFIER"))
-		    .equals(name)) return emod;
-	    }
-	    
-	    Sycpol.exit("NAME ERROR: MODULE NOT FOUND.", "NAME: " + name);
-	    return null;
-	}
-
 	Procedure getProcedure(String name) {
-	    if (this.module.procedures.get(name) != null) {
-		return this.module.procedures.get(name);
-	    }
-	    else if (this.module.externalProcedures.get(name) != null) {
-		ExternalProcedure procedure
-		    = this.module.externalProcedures.get(name);
-		
-		String modulename
-		    = stringDeclaration(SycpolParser
-					.getDeclaration(procedure.info,
-							"MODULE NAME"));
-		String procedurename
-		    = stringDeclaration(SycpolParser
-					.getDeclaration(procedure.info,
-							"IDENTIFIER"));
-
-		Module rmodule = this.getEModule(modulename);
-		Procedure rprocedure = null;
-
-		for (Procedure eproc : rmodule.procedures.values()) {
-		    if (stringDeclaration(SycpolParser
-					  .getDeclaration(eproc.info,
-							  "IDENTIFIER"))
-			.equals(procedurename)) {
-			rprocedure = eproc;
-			break;
-		    }
-		}
-
-		if (rprocedure == null)
-		    Sycpol.exit("NAME ERROR: PROCEDURE NOT FOUND.", "NAME: " + name);
-
-		return rprocedure;
-	    }
-	    Sycpol.exit("NAME ERROR: PROCEDURE NOT FOUND.", "NAME: " + name);
-	    return null;
+	    return linker.getProcedure(this.module, name);
 	}
 
 	Structure getStructure(String name) {
-	    if (this.module.structures.get(name) != null) {
-		return this.module.structures.get(name);
-	    }
-	    else if (this.module.externalStructures.get(name) != null) {
-		ExternalStructure structure
-		    = this.module.externalStructures.get(name);
-		
-		String modulename
-		    = stringDeclaration(SycpolParser
-					.getDeclaration(structure.info,
-							"MODULE NAME"));
-		String structurename
-		    = stringDeclaration(SycpolParser
-					.getDeclaration(structure.info,
-							"IDENTIFIER"));
-
-		Module rmodule = this.getEModule(modulename);
-		Structure rstructure = null;
-
-		for (Structure estruc : rmodule.structures.values()) {
-		    if (stringDeclaration(SycpolParser
-					  .getDeclaration(estruc.info,
-							  "IDENTIFIER"))
-			.equals(structurename)) {
-			rstructure = estruc;
-			break;
-		    }
-		}
-
-		if (rstructure == null)
-		    Sycpol.exit("NAME ERROR: STRUCTURE NOT FOUND.", "NAME: " + name);
-
-		return rstructure;
-	    }
-	    Sycpol.exit("NAME ERROR: STRUCTURE NOT FOUND.", "NAME: " + name);
-	    return null;
+	    return linker.getStructure(this.module, name);
 	}
 
 	void proceed(String name, List<SycpolObject> args) {
@@ -481,9 +604,304 @@ class SycpolInterpreter {
 	    }
 	}
 
+	// Procedures use the variables of the module that defines them,
+	// also when another module calls them.
+	private SycpolModule owner(Procedure proc) {
+	    return proc.module == this.module ? this : module(proc.module);
+	}
+
 	void proceedTo(Procedure proc, List<SycpolObject> args) {
-	    if (Sycpol.debug) System.err.println("PROCEEDING TO " + proc.name);
+	    if (context.reference) {
+		owner(proc).proceedReference(proc, args);
+		return;
+	    }
+	    execute(this.enter(proc, args.toArray(new SycpolObject[args.size()]), null));
+	}
+
+	private void proceedReference(Procedure proc, List<SycpolObject> args) {
+	    if (context.debug) context.err.println("PROCEEDING TO " + proc.name);
+
+	    SycpolEvents.Procedure event = new SycpolEvents.Procedure();
+	    event.begin();
+	    SycpolProfile profile = context.profile;
+	    SycpolTrace trace = context.trace;
+	    int caller = trace != null ? trace.enter(proc) : 0;
+	    long streams = context.streams.mark();
+	    try {
+		if (profile == null) {
+		    interpretStatements(proc, args);
+		    context.streams.release(streams);
+		    if (trace != null) trace.leave(caller);
+		    return;
+		}
+		SycpolProfile.Entry entry = profile.entry(proc);
+		long outer = profile.callees();
+		long start = profile.enter(entry);
+		try {
+		    interpretStatements(proc, args);
+		    context.streams.release(streams);
+		} finally {
+		    profile.leave(entry, start, outer);
+		}
+		if (trace != null) trace.leave(caller);
+	    } finally {
+		event.commit(this.module.name, proc.name);
+	    }
+	}
+
+	// Starts a call: begins its profile, trace and JFR records and
+	// sets up its frame.
+	private Activation enter(Procedure proc, SycpolObject[] args, Activation caller) {
+	    if (context.debug) context.err.println("PROCEEDING TO " + proc.name);
+
+	    Activation a = new Activation(proc, caller, (caller != null ? caller.module : this).owner(proc));
+	    if (a.depth > context.maxDepth)
+		Sycpol.exit("STORAGE ERROR: STACK OVERFLOW.", "DEPTH: " + a.depth);
+	    SycpolProfile profile = context.profile;
+	    boolean recorded = new SycpolEvents.Procedure().isEnabled();
+	    if (recorded || profile != null || context.trace != null) {
+		Records r = a.records = new Records();
+		if (recorded) {
+		    r.event = new SycpolEvents.Procedure();
+		    r.event.begin();
+		}
+		if (context.trace != null) r.tracer = context.trace.enter(proc);
+		if (profile != null) {
+		    r.entry = profile.entry(proc);
+		    r.outer = profile.callees();
+		    r.start = profile.enter(r.entry);
+		}
+	    }
+
+	    a.streams = context.streams.mark();
+	    try {
+		a.frame = proc.slots == 0 ? NONE : new SycpolObject[proc.slots];
+		for (int i = 0; i < proc.variables.size(); i++) {
+		    a.frame[proc.variables.get(i).slot]
+			= proc.variables.get(i).createObject(SycpolInterpreter.this);
+		}
+
+		if (args.length != proc.parameters.size())
+		    Sycpol.exit("ARGUMENT ERROR: WRONG NUMBER OF ARGUMENTS.", "GOT: " + args.length, "REQUIRED: " + proc.parameters.size());
+		for (int i = 0; i < proc.parameters.size(); i++) {
+		    a.frame[proc.parameters.get(i).slot] = args[i].own();
+		}
+	    } catch (RuntimeException ex) {
+		this.finish(a);
+		throw ex;
+	    }
+	    return a;
+	}
+
+	// Ends a call that returned.
+	private void leave(Activation a) {
+	    if (context.trace != null) context.trace.leave(a.records.tracer);
+	    this.finish(a);
+	}
+
+	// Ends the profile and JFR records of a call, also when the program
+	// fails in it.
+	private void finish(Activation a) {
+	    Records r = a.records;
+	    if (r == null) return;
+	    if (r.entry != null) context.profile.leave(r.entry, r.start, r.outer);
+	    if (r.event != null) r.event.commit(a.module.module.name, a.proc.name);
+	}
+
+	private SycpolObject variable(Expression e, SycpolObject[] frame) {
+	    SycpolObject obj = e.slot != -1 ? frame[e.slot] : null;
+	    if (obj == null && e.global != -1) obj = this.globals[e.global];
+	    if (obj == null)
+		Sycpol.exit("NAME ERROR: VARIABLE NOT FOUND.", "NAME: " + e.name);
+	    return obj;
+	}
+
+	// Runs a call and the calls it makes until it returns, without
+	// using the Java stack: PROCEED TO pushes a call and RETURN pops
+	// it. A PROCEED TO followed by RETURN WITH SUCCESS replaces the
+	// calling procedure. With --profile, each line is counted, and
+	// timed until the next line of its procedure starts.
+	void execute(Activation a) {
+	    SycpolTrace trace = context.trace;
+	    Procedure proc = a.proc;
+	    SycpolModule mod = a.module;
+	    SycpolObject[] frame = a.frame;
+	    SycpolProfile.Entry entry = a.records != null ? a.records.entry : null;
+	    Instruction ins = null;
+	    int pc = proc.entry;
+	    int last = -1;
+	    long started = 0;
+	    try {
+		while (true) {
+		    if (pc == -1)
+			Sycpol.exit("PROGRAM ERROR: LINE NOT FOUND.",
+				    "LINE: " + (ins == null ? 1 : (short) (ins.line+1)));
+
+		    ins = proc.code[pc];
+
+		    if (entry != null) {
+			long now = System.nanoTime();
+			if (last != -1) entry.times[last] += now - started;
+			entry.counts[pc]++;
+			last = pc;
+			started = now;
+		    }
+
+		    if (trace != null) trace.record(SycpolTrace.LINE, ins.line, 0);
+		    if (context.debug) context.err.println("(" + ins.line + ") " + ins.source);
+
+		    switch (ins.op) {
+		    case CHANGE: {
+			SycpolObject to = mod.value(ins.value, frame);
+			mod.variable(ins.object, frame).assign(to);
+			break;}
+		    case CHANGE_FIELD: {
+			SycpolObject obj = mod.value(ins.object, frame);
+			SycpolObject to = mod.value(ins.value, frame);
+			obj.setField(ins.name, to.copy());
+			break;}
+		    case INCREMENT:
+			mod.variable(ins.object, frame).increment();
+			break;
+		    case DECREMENT:
+			mod.variable(ins.object, frame).decrement();
+			break;
+		    case INCREMENT_FIELD:
+			mod.value(ins.object, frame).getField(ins.name).increment();
+			break;
+		    case DECREMENT_FIELD:
+			mod.value(ins.object, frame).getField(ins.name).decrement();
+			break;
+		    case SEND: {
+			SycpolObject obj = mod.value(ins.value, frame);
+			SycpolObject to = mod.value(ins.object, frame);
+			if (context.debug) context.err.println(obj.integerValue() + " -> " + to.value_out.toString());
+			to.send(obj);
+			break;}
+		    case ADD: {
+			SycpolObject obj = mod.eval(ins.value, frame);
+			mod.value(ins.object, frame).add(obj);
+			break;}
+		    case REMOVE:
+			mod.value(ins.object, frame).remove();
+			break;
+		    case JUMP:
+			pc = ins.target;
+			continue;
+		    case IF: {
+			SycpolObject val1 = mod.value(ins.object, frame);
+			SycpolObject val2 = mod.value(ins.value, frame);
+			if (val1.equals(val2)) {
+			    pc = ins.target;
+			    continue;
+			}
+			break;}
+		    case PROCEED: {
+			SycpolObject[] pargs = ins.args.length == 0 ? NONE : new SycpolObject[ins.args.length];
+			for (int i = 0; i < pargs.length; i++)
+			    pargs[i] = mod.eval(ins.args[i], frame);
+			if (ins.next != -1 && proc.code[ins.next].op == Op.RETURN) {
+			    if (entry != null) entry.times[last] += System.nanoTime() - started;
+			    Activation caller = a.caller;
+			    // The streams of the caller may be passed on, so
+			    // they are released when the callee returns.
+			    long streams = a.streams;
+			    this.leave(a);
+			    // If the call fails, only the callers are left to finish.
+			    a = caller;
+			    a = this.enter(ins.procedure, pargs, caller);
+			    a.streams = streams;
+			}
+			else {
+			    a.pc = ins.next;
+			    a.ins = ins;
+			    if (entry != null) {
+				a.records.last = last;
+				a.records.started = started;
+			    }
+			    a = this.enter(ins.procedure, pargs, a);
+			}
+			proc = a.proc;
+			mod = a.module;
+			frame = a.frame;
+			entry = a.records != null ? a.records.entry : null;
+			ins = null;
+			pc = proc.entry;
+			last = -1;
+			continue;}
+		    case FAILURE:
+			Sycpol.exit("RESULT: PROGRAM FAILURE.");
+			return;
+		    case RETURN: {
+			Activation caller = a.caller;
+			context.streams.release(a.streams);
+			this.leave(a);
+			a = caller;
+			if (a == null) return;
+			proc = a.proc;
+			mod = a.module;
+			frame = a.frame;
+			entry = a.records != null ? a.records.entry : null;
+			ins = a.ins;
+			pc = a.pc;
+			if (entry != null) {
+			    last = a.records.last;
+			    started = a.records.started;
+			}
+			continue;}
+		    }
+		    pc = ins.next;
+		}
+	    } catch (RuntimeException ex) {
+		for (; a != null; a = a.caller) this.finish(a);
+		throw ex;
+	    }
+	}
+
+	// Evaluates an expression whose object may be stored or changed.
+	private SycpolObject eval(Expression e, SycpolObject[] frame) {
+	    return eval(e, frame, true);
+	}
+
+	// Evaluates an expression that is only read.
+	private SycpolObject value(Expression e, SycpolObject[] frame) {
+	    return eval(e, frame, false);
+	}
+
+	private SycpolObject eval(Expression e, SycpolObject[] frame, boolean store) {
+	    switch (e.kind) {
+	    case VARIABLE:
+		return variable(e, frame);
+	    case NEW:
+		return new SycpolObject(e.type);
+	    case NEXT:
+		return value(e.of, frame).next();
+	    case ELEMENT:
+	    case CHARACTER: {
+		SycpolObject at, ino;
+		if (e.atFirst) {
+		    at = value(e.at, frame);
+		    ino = value(e.of, frame);
+		}
+		else {
+		    ino = value(e.of, frame);
+		    at = value(e.at, frame);
+		}
+		if (e.kind == Kind.CHARACTER)
+		    return ino.getCharAt(at);
+		return store ? ino.getElementAt(at) : ino.getElementValueAt(at);
+	    }
+	    case FIELD: {
+		SycpolObject of = value(e.of, frame);
+		return store ? of.getField(e.name) : of.getFieldValue(e.name);
+	    }
+	    }
+	    return null;
+	}
 
+	// Reference mode: tokenizes and interprets each statement as it
+	// is reached.
+	void interpretStatements(Procedure proc, List<SycpolObject> args) {
 	    Map<String, SycpolObject> localvariables = new HashMap<>();
 
 	    for (int i = 0; i < proc.variables.size(); i++) {
@@ -496,7 +914,7 @@ class SycpolInterpreter {
 	    if (args.size() != proc.parameters.size())
 		Sycpol.exit("ARGUMENT ERROR: WRONG NUMBER OF ARGUMENTS.", "GOT: " + args.size(), "REQUIRED: " + proc.parameters.size());
 	    for (int i = 0; i < proc.parameters.size(); i++) {
-		localvariables.put(proc.parameters.get(i).name, args.get(i));
+		localvariables.put(proc.parameters.get(i).name, args.get(i).own());
 	    }
 
 	    short ip = 1;
@@ -506,21 +924,10 @@ class SycpolInterpreter {
 		if (stmt == null)
 		    Sycpol.exit("PROGRAM ERROR: LINE NOT FOUND.", "LINE: " + ip);
 
-		if (Sycpol.debug) System.err.println("(" + ip + ") " + stmt);
+		if (context.trace != null) context.trace.record(SycpolTrace.LINE, ip, 0);
+		if (context.debug) context.err.println("(" + ip + ") " + stmt);
 
-		List<String> in = new ArrayList<>(Arrays.asList(stmt.split(" ")));
-		for (int i = 0; i < in.size(); i++) {
-		    while (in.get(i).trim().length() == 0) in.remove(i);
-		    if (in.get(i).indexOf('=') != 0) {
-			int j = i;
-			for (String tok : Arrays.asList(in.remove(i).split("="))) {
-			    in.add(j++, "=");
-			    in.add(j++, tok);
-			}
-			in.remove(i);
-		    }
-		}
-		in.add("( EOF )");
+		List<String> in = SycpolCompiler.tokenize(stmt);
 		
 		switch (seek(in)) {
 		case "CHANGE": {
@@ -545,13 +952,13 @@ class SycpolInterpreter {
 			SycpolObject obj;
 			obj = localvariables.get(var);
 			if (obj != null) {
-			    obj.change(to.copy());
+			    obj.assign(to);
 			}
 			else {
 			    obj = this.variables.get(var);
 			    if (obj == null)
 				Sycpol.exit("NAME ERROR: VARIABLE NOT FOUND.", "NAME: " + var);
-			    obj.change(to.copy());
+			    obj.assign(to);
 			}
 		    }
 		    
@@ -599,7 +1006,7 @@ class SycpolInterpreter {
 		    SycpolObject obj = expr(in, localvariables);
 		    accept("TO", in);
 		    SycpolObject to = expr(in, localvariables);
-		    if (Sycpol.debug) System.err.println(obj.integerValue() + " -> " + to.value_out.toString());
+		    if (context.debug) context.err.println(obj.integerValue() + " -> " + to.value_out.toString());
 		    to.send(obj);
 		    break;}
 		case "ADD": {
@@ -676,7 +1083,7 @@ class SycpolInterpreter {
 		accept("NEW", in);
 		String strname = next(in);
 		Structure str = this.getStructure(strname);
-		return new SycpolObject(strname);
+		return new SycpolObject(SycpolType.of(strname));
 	    }
 	    if (!seek(in).equals("THE")) {
 		// System.err.println(localvariables + "" + variables);
@@ -737,11 +1144,49 @@ class SycpolInterpreter {
 	}
     }
 
-    public SycpolInterpreter(SycpolParser.Program prog) {
+    public SycpolInterpreter(SycpolParser.Program prog, SycpolContext context) {
 	this.sycpolProgram = prog;
+	this.context = context;
+	this.linker = new SycpolLinker(prog, this);
+
+	for (int i = 0; i < this.integer8.length; i++) {
+	    this.integer8[i] = new SycpolObject((byte) i);
+	    this.integer8[i].shared = true;
+	}
+	for (int i = 0; i < this.integer16.length; i++) {
+	    this.integer16[i] = new SycpolObject((short) i);
+	    this.integer16[i].shared = true;
+	}
+    }
+
+    // Compiles and links the program, unless that was done already.
+    // Interpreters sharing a program wait for the first to link it.
+    public void prepare() {
+	if (this.context.reference) return;
+	synchronized (this.sycpolProgram) {
+	    if (!this.sycpolProgram.linked) {
+		new SycpolCompiler().compile(this.sycpolProgram);
+		this.linker.link();
+		this.sycpolProgram.linked = true;
+	    }
+	}
     }
 
-    public void interpret() {
+    // The module state of a module of the program, created when a
+    // procedure of it first runs unless interpret created it.
+    SycpolModule module(SycpolParser.Module mod) {
+	SycpolModule smod = this.modules.get(mod.name);
+	if (smod == null) {
+	    smod = new SycpolModule(mod);
+	    this.modules.put(mod.name, smod);
+	}
+	return smod;
+    }
+
+    // Runs the MAIN procedure, and returns whether there was one.
+    public boolean interpret() {
+	this.prepare();
+
 	SycpolModule mainModule = null;
 	for (SycpolParser.Module mod: this.sycpolProgram.modules.values()) {
 	    SycpolModule smod = new SycpolModule(mod);
@@ -755,11 +1200,12 @@ class SycpolInterpreter {
 	}
 	
 	if (mainModule == null) {
-	    if (Sycpol.verbose) System.err.println("NO MAIN PROCEDURE.");
-	    return;
+	    if (this.context.verbose) this.context.err.println("NO MAIN PROCEDURE.");
+	    return false;
 	}
 	
 	interpretModule(mainModule);
+	return true;
     }
 
     public void interpretModule(SycpolModule module) {
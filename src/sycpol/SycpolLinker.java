@@ -0,0 +1,165 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+import sycpol.SycpolParser.*;
+import sycpol.SycpolCompiler.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+
+// Binds procedure and structure references, including EXTERNAL
+// PROCEDURE and EXTERNAL STRUCTURE imports, to their targets. Modules,
+// procedures and structures are indexed by their IDENTIFIER the first
+// time an external reference needs them.
+public class SycpolLinker {
+
+    private Program program;
+    private SycpolInterpreter inter;
+
+    private Map<String, SycpolParser.Module> modules;
+    private Map<SycpolParser.Module, Map<String, Procedure>> procedures = new HashMap<>();
+    private Map<SycpolParser.Module, Map<String, Structure>> structures = new HashMap<>();
+
+    public SycpolLinker(Program program, SycpolInterpreter inter) {
+	this.program = program;
+	this.inter = inter;
+    }
+
+    // Links compiled code. Must be run after SycpolCompiler.
+    public void link() {
+	for (SycpolParser.Module mod : this.program.modules.values()) {
+	    for (Procedure proc : mod.procedures.values()) {
+		for (Instruction ins : proc.code) {
+		    if (ins.op == Op.PROCEED)
+			ins.procedure = getProcedure(mod, ins.name);
+		    link(mod, ins.object);
+		    link(mod, ins.value);
+		    if (ins.args != null)
+			for (Expression arg : ins.args)
+			    link(mod, arg);
+		}
+	    }
+	}
+    }
+
+    private void link(SycpolParser.Module mod, Expression e) {
+	if (e == null) return;
+	if (e.kind == Kind.NEW) {
+	    e.structure = getStructure(mod, e.name);
+	    e.type = SycpolType.of(e.name);
+	}
+	link(mod, e.at);
+	link(mod, e.of);
+    }
+
+    private String identifier(List<Declaration> info) {
+	Declaration decl = SycpolParser.getDeclaration(info, "IDENTIFIER");
+	return decl == null ? null : this.inter.stringDeclaration(decl);
+    }
+
+    SycpolParser.Module getEModule(String name) {
+	if (this.modules == null) {
+	    this.modules = new HashMap<>();
+	    for (SycpolParser.Module emod : this.program.modules.values()) {
+		String id = identifier(emod.info);
+		if (id != null && this.modules.get(id) == null)
+		    this.modules.put(id, emod);
+	    }
+	}
+
+	SycpolParser.Module emod = this.modules.get(name);
+	if (emod == null)
+	    Sycpol.exit("NAME ERROR: MODULE NOT FOUND.", "NAME: " + name);
+	return emod;
+    }
+
+    Procedure getProcedure(SycpolParser.Module module, String name) {
+	if (module.procedures.get(name) != null) {
+	    return module.procedures.get(name);
+	}
+	else if (module.externalProcedures.get(name) != null) {
+	    ExternalProcedure procedure
+		= module.externalProcedures.get(name);
+	    SycpolEvents.Resolve event = new SycpolEvents.Resolve();
+	    event.begin();
+
+	    String modulename
+		= this.inter.stringDeclaration(SycpolParser
+					       .getDeclaration(procedure.info,
+							       "MODULE NAME"));
+	    String procedurename
+		= this.inter.stringDeclaration(SycpolParser
+					       .getDeclaration(procedure.info,
+							       "IDENTIFIER"));
+
+	    SycpolParser.Module rmodule = getEModule(modulename);
+	    Map<String, Procedure> index = this.procedures.get(rmodule);
+	    if (index == null) {
+		index = new HashMap<>();
+		for (Procedure eproc : rmodule.procedures.values()) {
+		    String id = identifier(eproc.info);
+		    if (id != null && index.get(id) == null)
+			index.put(id, eproc);
+		}
+		this.procedures.put(rmodule, index);
+	    }
+
+	    Procedure rprocedure = index.get(procedurename);
+	    if (rprocedure == null)
+		Sycpol.exit("NAME ERROR: PROCEDURE NOT FOUND.", "NAME: " + name);
+
+	    event.end();
+	    if (event.shouldCommit()) {
+		event.module = module.name;
+		event.procedure = name;
+		event.target = modulename;
+		event.identifier = procedurename;
+		event.commit();
+	    }
+	    return rprocedure;
+	}
+	Sycpol.exit("NAME ERROR: PROCEDURE NOT FOUND.", "NAME: " + name);
+	return null;
+    }
+
+    Structure getStructure(SycpolParser.Module module, String name) {
+	if (module.structures.get(name) != null) {
+	    return module.structures.get(name);
+	}
+	else if (module.externalStructures.get(name) != null) {
+	    ExternalStructure structure
+		= module.externalStructures.get(name);
+
+	    String modulename
+		= this.inter.stringDeclaration(SycpolParser
+					       .getDeclaration(structure.info,
+							       "MODULE NAME"));
+	    String structurename
+		= this.inter.stringDeclaration(SycpolParser
+					       .getDeclaration(structure.info,
+							       "IDENTIFIER"));
+
+	    SycpolParser.Module rmodule = getEModule(modulename);
+	    Map<String, Structure> index = this.structures.get(rmodule);
+	    if (index == null) {
+		index = new HashMap<>();
+		for (Structure estruc : rmodule.structures.values()) {
+		    String id = identifier(estruc.info);
+		    if (id != null && index.get(id) == null)
+			index.put(id, estruc);
+		}
+		this.structures.put(rmodule, index);
+	    }
+
+	    Structure rstructure = index.get(structurename);
+	    if (rstructure == null)
+		Sycpol.exit("NAME ERROR: STRUCTURE NOT FOUND.", "NAME: " + name);
+
+	    return rstructure;
+	}
+	Sycpol.exit("NAME ERROR: STRUCTURE NOT FOUND.", "NAME: " + name);
+	return null;
+    }
+}
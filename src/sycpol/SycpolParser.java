@@ -11,9 +11,6 @@ import java.util.HashMap;
 
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.File;
 import java.io.IOException;
 
 public class SycpolParser {
@@ -38,7 +35,7 @@ public class SycpolParser {
     };
 
     // Parses the type at the end of a line.
-    protected String endOf(String line) {
+    protected static SycpolType endOf(String line) {
 	String dt = "";
 	for (String datatype : datatypes) {
 	    if (line.endsWith(datatype)) {
@@ -57,23 +54,25 @@ public class SycpolParser {
 	    dtl = "+" + dtl;
 	}
 
-	return dt;
+	return SycpolType.of(dt);
     }
 
-    protected String startOf(String line, String dt) {
+    protected static String startOf(String line, String dt) {
 	return line.substring(0, 22-dt.length()-1).trim();
     }
 
-    protected void skipEmpties(Queue<String> lines) {
+    protected static void skipEmpties(Queue<String> lines) {
 	while (lines.size() != 0
 	       && (lines.peek().equals(EMPTY)
 		   || lines.peek().length() == 0)) lines.poll();
     }
 
-    private static int counter = 1001;
-
-    public class Program {
+    public static class Program {
 	public HashMap<String, Module> modules = new HashMap<>();
+	// Set once the program has been compiled and linked.
+	public boolean linked;
+	// Number of the next anonymous module.
+	private int counter = 1001;
 
 	public Program parse(Queue<String> in) {
 	    skipEmpties(in);
@@ -91,7 +90,7 @@ public class SycpolParser {
 		    skipEmpties(in);
 		}
 		else if (in.peek().equals("DOCUMENTATION DIVISION")) {
-		    Module b = new Module("ANONYMOYSMODULE@"+counter++);
+		    Module b = new Module("ANONYMOYSMODULE@"+this.counter++);
 		    b.parse(in);
 		    b.validate();
 		    this.modules.put(b.name, b);
@@ -107,7 +106,7 @@ public class SycpolParser {
 	}
     }
 
-    public class Module {
+    public static class Module {
 	public Map<String, Procedure> procedures = new HashMap<>();
 	public Map<String, Structure> structures = new HashMap<>();
 	public List<Variable> variables = new ArrayList<>();
@@ -117,6 +116,7 @@ public class SycpolParser {
 	    = new HashMap<>();
 	public List<Declaration> info = new ArrayList<>();
 	public String name;
+	public int slots;
 
 	public boolean out = true, in = true;
 
@@ -158,18 +158,10 @@ public class SycpolParser {
 			if (in.peek().startsWith("OPEN")) {
 			    // This declaration is completely insane
 			    String line = in.poll();
-			    if (line.startsWith("OPEN STANDARD INPUT")) {
+			    if (line.startsWith("OPEN STANDARD INPUT"))
 				this.in = true;
-				if (Sycpol.STANDARD_INPUT == null)
-				    Sycpol.exit("IO ERROR: UNABLE TO"
-						+ "OPEN STANDARD INPUT.");
-			    }
-			    else if (line.startsWith("OPEN STANDARD OUTPUT")) {
+			    else if (line.startsWith("OPEN STANDARD OUTPUT"))
 				this.out = true;
-				if (Sycpol.STANDARD_OUTPUT == null)
-				    Sycpol.exit("IO ERROR: UNABLE TO"
-						+ "OPEN STANDARD OUTPUT.");
-			    }
 			    else Sycpol.exit("SYNTAX ERROR: UNKNOWN STREAM.");
 			    skipEmpties(in);
 			    continue;
@@ -256,6 +248,7 @@ public class SycpolParser {
 		else
 		    v.parse(in);
 		v.validate();
+		v.module = this;
 		this.procedures.put(name, v);
 		skipEmpties(in);
 	    }
@@ -288,16 +281,19 @@ public class SycpolParser {
 	return null;
     }
 
-    public class Declaration {
+    public static class Declaration {
 	public String name;
-	public String datatype;
+	public SycpolType datatype;
 
 	public String value = "";
 
+	// Frame or module slot assigned by the compiler.
+	public int slot = -1;
+
 	Declaration parse(Queue<String> in) {
 	    String line = in.poll();
 	    this.datatype = endOf(line);
-	    this.name = startOf(line, this.datatype);
+	    this.name = startOf(line, this.datatype.name);
 	    while (in.size() != 0 && !in.peek().equals(EMPTY)) {
 		value = value + in.poll() + "\n";
 	    }
@@ -312,9 +308,7 @@ public class SycpolParser {
 		|| this.value.trim().equals(""))
 		return null;
 
-	    if (this.datatype.equals(STRING8)
-		|| this.datatype.equals(STRING16)
-		|| this.datatype.equals(STRING32)) {
+	    if (this.datatype.isString()) {
 		String newval = "";
 		for (String val : this.value.split("\n")) {
 		    val = val.trim();
@@ -336,14 +330,13 @@ public class SycpolParser {
 		return inter.new SycpolObject(this.datatype, newval);
 	    }
 
-	    if (this.datatype.equals(INTEGER8)
-		|| this.datatype.equals(INTEGER16)) {
+	    if (this.datatype.isInteger()) {
 		String str = this.value.trim();
 		if (!str.matches("^[0-9]+$")) {
 		    Sycpol.exit("SYNTAX ERROR: INVALID INTEGER VALUE.", "VAL: " + str);
 		}
 		try {
-		    switch (this.datatype) {
+		    switch (this.datatype.kind) {
 		    case INTEGER8:
 			return inter.new SycpolObject((byte)
 						      Byte.parseByte(str));
@@ -357,23 +350,41 @@ public class SycpolParser {
 		}
 	    }
 
-	    if (this.datatype.equals(IOSTREAM)
-		|| this.datatype.equals(ISTREAM)
-		|| this.datatype.equals(OSTREAM)) {
+	    if (this.datatype == SycpolType.IOSTREAM
+		|| this.datatype == SycpolType.ISTREAM
+		|| this.datatype == SycpolType.OSTREAM) {
 		OutputStream outs = null;
 		InputStream ins = null;
 
 		String[] ss = this.value.split("\n");
+
+		// Options for FS output.
+		long sizeHint = 0;
+		SycpolStreams.Sync sync = null;
+		for (String s : ss) {
+		    if (s.startsWith("SIZE")) {
+			String str = s.substring(4).trim();
+			if (!str.matches("^[0-9]+$"))
+			    Sycpol.exit("SYNTAX ERROR: INVALID STREAM SIZE.", "VAL: " + str);
+			sizeHint = Long.parseLong(str);
+		    }
+		    if (s.startsWith("SYNC")) {
+			sync = SycpolStreams.sync(s.substring(4).trim());
+			if (sync == null)
+			    Sycpol.exit("SYNTAX ERROR: UNKNOWN SYNC POLICY.", "VAL: " + s);
+		    }
+		}
+
 		for (String s : ss) {
 		    if (s.startsWith("OUTS")) {
 			String stream = s.substring(5).trim();
 			if (stream.equals("STANDARD OUTPUT")) {
-			    outs = Sycpol.STANDARD_OUTPUT;
+			    outs = inter.context.standardOutput;
 			}
 			else if (stream.startsWith("FS")) {
 			    String path = stream.substring(3);
 			    try {
-				outs = new FileOutputStream(new File(path));
+				outs = inter.context.streams.output(inter.context.file(path), sizeHint, sync);
 			    } catch (IOException ex) {
 				Sycpol.exit("IO ERROR: FS FAILURE.", "PATH: " + path, "JAVA ERROR: " + ex.toString().toUpperCase());
 			    }
@@ -382,12 +393,12 @@ public class SycpolParser {
 		    if (s.startsWith("INS")) {
 			String stream = s.substring(4).trim();
 			if (stream.equals("STANDARD INPUT")) {
-			    ins = Sycpol.STANDARD_INPUT;
+			    ins = inter.context.standardInput;
 			}
 			else if (stream.startsWith("FS")) {
 			    String path = stream.substring(3);
 			    try {
-				ins = new FileInputStream(new File(path));
+				ins = inter.context.streams.input(inter.context.file(path));
 			    } catch (IOException ex) {
 				Sycpol.exit("IO ERROR: FS FAILURE.", "PATH: " + path, "JAVA ERROR: " + ex.toString().toUpperCase());
 			    }
@@ -406,7 +417,7 @@ public class SycpolParser {
 		Sycpol.exit("SYNTAX ERROR: ILLEGAL DECLARATION NAME.", "NAME: " + this.name, "TYPE: " + this.datatype);
 	}
     }
-    public class Variable extends Declaration {
+    public static class Variable extends Declaration {
 	public void validate() {
 	    if (this.name.trim().length() == 0)
 		Sycpol.exit("SYNTAX ERROR: MISSING VARIABLE NAME.", "TYPE: " + this.datatype);
@@ -416,11 +427,11 @@ public class SycpolParser {
 		Sycpol.exit("SYNTAX ERROR: MISSING CONSTANT VALUE.", "NAME: " + this.name, "TYPE: " + this.datatype);
 	}
     }
-    public class Parameter extends Declaration {
+    public static class Parameter extends Declaration {
 	Declaration parse(Queue<String> in) {
 	    String line = in.poll();
 	    this.datatype = endOf(line);
-	    this.name = startOf(line, this.datatype);
+	    this.name = startOf(line, this.datatype.name);
 	    validate();
 	    return this;
         }
@@ -432,11 +443,11 @@ public class SycpolParser {
 		Sycpol.exit("SYNTAX ERROR: INVALID PARAMETER PREFIX.", "NAME: " + this.name, "TYPE: " + this.datatype);
 	}
     }
-    public class Field extends Declaration {
+    public static class Field extends Declaration {
 	Declaration parse(Queue<String> in) {
 	    String line = in.poll();
 	    this.datatype = endOf(line);
-	    this.name = startOf(line, this.datatype);
+	    this.name = startOf(line, this.datatype.name);
 	    validate();
 	    return this;
         }
@@ -447,7 +458,7 @@ public class SycpolParser {
 	}
     }
 
-    public class ExternalProcedure {
+    public static class ExternalProcedure {
 	public String name;
 	public List<Declaration> info = new ArrayList<>();
 
@@ -474,7 +485,7 @@ public class SycpolParser {
 	}
     }
 
-    public class ExternalStructure {
+    public static class ExternalStructure {
 	public String name;
 	public List<Declaration> info = new ArrayList<>();
 
@@ -501,12 +512,17 @@ public class SycpolParser {
 	}
     }
 
-    public class Procedure {
+    public static class Procedure {
 	public String name;
 	public List<Declaration> info = new ArrayList<>();
 	public List<Parameter> parameters = new ArrayList<>();
 	public List<Variable> variables = new ArrayList<>();
 	public Map<Short, String> statements = new HashMap<>();
+	public SycpolCompiler.Instruction[] code;
+	public int entry;
+	public int slots;
+	// The module that defines the procedure, whose variables it uses.
+	public Module module;
 
 	Procedure(String name) {
 	    this.name = name;
@@ -590,7 +606,7 @@ public class SycpolParser {
 	}
     }
 
-    public class Structure {
+    public static class Structure {
 	public String name;
 	public List<Field> fields = new ArrayList<>();
 	public List<Declaration> info = new ArrayList<>();
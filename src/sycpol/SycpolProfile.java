@@ -0,0 +1,126 @@
+package sycpol;
+
+import sycpol.SycpolParser;
+import sycpol.SycpolParser.Procedure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.io.PrintStream;
+
+// Execution counts and times of a run with --profile. Each procedure
+// has counters indexed like its code, so counting a statement does
+// not look anything up. The time of a line is measured up to the next
+// line, so a PROCEED TO line includes the procedure it calls.
+public class SycpolProfile {
+
+    public static class Entry {
+	public final Procedure procedure;
+	public long calls, inclusive, exclusive;
+	// Executions and nanoseconds per instruction.
+	public final long[] counts, times;
+	// Active calls, so that recursive calls are timed once.
+	int depth;
+
+	Entry(Procedure procedure) {
+	    this.procedure = procedure;
+	    int size = procedure.code != null ? procedure.code.length : 0;
+	    this.counts = new long[size];
+	    this.times = new long[size];
+	}
+    }
+
+    private static class Line {
+	final String label;
+	final long count, time;
+
+	Line(String label, long count, long time) {
+	    this.label = label;
+	    this.count = count;
+	    this.time = time;
+	}
+    }
+
+    private final Map<Procedure, Entry> entries = new IdentityHashMap<>();
+    // Time spent in procedures called by the one running.
+    private long callees;
+
+    public Entry entry(Procedure proc) {
+	Entry entry = this.entries.get(proc);
+	if (entry == null) {
+	    entry = new Entry(proc);
+	    this.entries.put(proc, entry);
+	}
+	return entry;
+    }
+
+    // Called around each procedure call. Returns the time the call
+    // started.
+    long enter(Entry entry) {
+	entry.calls++;
+	entry.depth++;
+	return System.nanoTime();
+    }
+
+    // Returns the time spent in callees before this call, to be
+    // passed to leave.
+    long callees() {
+	long outer = this.callees;
+	this.callees = 0;
+	return outer;
+    }
+
+    void leave(Entry entry, long start, long outer) {
+	long time = System.nanoTime() - start;
+	if (--entry.depth == 0) entry.inclusive += time;
+	entry.exclusive += time - this.callees;
+	this.callees = outer + time;
+    }
+
+    // Prints procedures by their own time and lines by their time,
+    // the slowest first.
+    public void print(PrintStream out, SycpolParser.Program prog) {
+	Map<Procedure, String> names = new HashMap<>();
+	for (SycpolParser.Module mod : prog.modules.values())
+	    for (Procedure proc : mod.procedures.values())
+		names.put(proc, mod.name + " " + proc.name);
+
+	List<Entry> procs = new ArrayList<>(this.entries.values());
+	Collections.sort(procs, new Comparator<Entry>() {
+	    @Override
+	    public int compare(Entry a, Entry b) {
+		return Long.compare(b.exclusive, a.exclusive);
+	    }
+	});
+
+	out.println("PROFILE");
+	out.println(String.format("%-30s %10s %12s %12s", "PROCEDURE", "CALLS", "TOTAL MS", "SELF MS"));
+	for (Entry e : procs)
+	    out.println(String.format("%-30s %10d %12.3f %12.3f", names.get(e.procedure),
+				      e.calls, e.inclusive / 1e6, e.exclusive / 1e6));
+
+	List<Line> lines = new ArrayList<>();
+	for (Entry e : procs)
+	    for (int pc = 0; pc < e.counts.length; pc++)
+		if (e.counts[pc] != 0)
+		    lines.add(new Line(names.get(e.procedure) + " (" + e.procedure.code[pc].line + ")",
+				       e.counts[pc], e.times[pc]));
+	Collections.sort(lines, new Comparator<Line>() {
+	    @Override
+	    public int compare(Line a, Line b) {
+		return Long.compare(b.time, a.time);
+	    }
+	});
+
+	if (lines.isEmpty()) return;
+	out.println();
+	out.println(String.format("%-30s %10s %12s", "LINE", "COUNT", "TIME MS"));
+	for (Line l : lines)
+	    out.println(String.format("%-30s %10d %12.3f", l.label, l.count, l.time / 1e6));
+    }
+}
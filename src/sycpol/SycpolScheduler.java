@@ -0,0 +1,94 @@
+package sycpol;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+// Runs programs on threads of their own, with at most a given number
+// running at once. Programs mostly wait on their streams, so with
+// virtual threads a process can keep many of them in flight; their
+// stream locks are not synchronized, so a blocked program does not
+// hold a carrier thread.
+//
+// Virtual threads are looked up at run time, since they need Java 21.
+// Without them, a pool of as many platform threads as may run at once
+// is used, so that waiting programs hold no thread.
+public class SycpolScheduler {
+
+    // Whether tasks run on virtual threads.
+    public final boolean virtual;
+
+    private final ExecutorService executor;
+    private final Semaphore running;
+
+    public SycpolScheduler(int limit, boolean virtual) {
+	ExecutorService executor = virtual ? virtualExecutor() : null;
+	this.virtual = executor != null;
+	this.executor = executor != null ? executor
+	    : limit == Integer.MAX_VALUE ? Executors.newCachedThreadPool()
+	    : Executors.newFixedThreadPool(limit);
+	this.running = new Semaphore(limit);
+    }
+
+    // Returns null if the JVM has no virtual threads.
+    private static ExecutorService virtualExecutor() {
+	try {
+	    return (ExecutorService) Executors.class
+		.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+	} catch (ReflectiveOperationException ex) {
+	    return null;
+	}
+    }
+
+    // Runs a task once fewer than the limit are running, and then
+    // closes its resource. If the thread is interrupted while the task
+    // waits for its turn, the task does not run: the resource is closed,
+    // the interrupt status is restored and the future is cancelled, so
+    // that get() throws CancellationException.
+    public Future<?> submit(Runnable task, Closeable resource) {
+	Turn turn = new Turn(task, resource);
+	this.executor.execute(turn);
+	return turn;
+    }
+
+    private class Turn extends FutureTask<Void> {
+	private final Closeable resource;
+
+	Turn(Runnable task, Closeable resource) {
+	    super(task, null);
+	    this.resource = resource;
+	}
+
+	@Override
+	public void run() {
+	    try {
+		try {
+		    running.acquire();
+		} catch (InterruptedException ex) {
+		    Thread.currentThread().interrupt();
+		    this.cancel(false);
+		    return;
+		}
+		try {
+		    super.run();
+		} finally {
+		    running.release();
+		}
+	    } finally {
+		try {
+		    this.resource.close();
+		} catch (IOException ex) {
+		}
+	    }
+	}
+    }
+
+    public void shutdown() {
+	this.executor.shutdown();
+    }
+}
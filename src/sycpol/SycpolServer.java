@@ -0,0 +1,302 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.IOException;
+
+// Runs programs for clients connected to a local socket, so that the
+// JVM, its compiled code and the programs stay loaded between runs.
+//
+// The client sends its working directory and arguments, followed by
+// its standard input as frames of a length and that many bytes; an
+// empty frame ends the input. The server answers with frames of
+// standard output and standard error, and finally the exit status.
+//
+// Each client is served by its own thread and context, scheduled by a
+// SycpolScheduler: --virtual-threads serves clients on virtual threads,
+// and --max-runs limits how many programs run at once.
+public class SycpolServer {
+
+    public static final byte OUT = 'O', ERR = 'E', EXIT = 'X';
+
+    // Linked programs of earlier runs, by directory and arguments, the
+    // least recently used first. Only the last PROGRAMS are kept.
+    private static final int PROGRAMS = 64;
+    private static final Map<String, Entry> programs = new LinkedHashMap<>(16, 0.75f, true);
+
+    // A program and the modification times of the files it was read
+    // from.
+    private static class Entry {
+	SycpolParser.Program program;
+	Map<File, Long> files;
+
+	boolean valid() {
+	    for (Map.Entry<File, Long> e : this.files.entrySet())
+		if (e.getKey().lastModified() != e.getValue()) return false;
+	    return true;
+	}
+    }
+
+    // Runs that only check, print or compile the cards always read them.
+    private static String key(String directory, String[] args) {
+	for (String arg : args) {
+	    switch (arg) {
+	    case "--check-cards":
+	    case "--check-declarations":
+	    case "--debug":
+	    case "--reference":
+	    case "--compile-to":
+		return null;
+	    }
+	}
+	return directory + "\0" + String.join("\0", args);
+    }
+
+    private static SycpolParser.Program cached(String key) {
+	if (key == null) return null;
+	Entry entry;
+	synchronized (programs) {
+	    entry = programs.get(key);
+	}
+	if (entry == null) return null;
+	if (entry.valid()) return entry.program;
+	synchronized (programs) {
+	    programs.remove(key, entry);
+	}
+	return null;
+    }
+
+    private static void store(String key, Entry entry) {
+	synchronized (programs) {
+	    programs.put(key, entry);
+	    if (programs.size() > PROGRAMS) {
+		Iterator<Entry> eldest = programs.values().iterator();
+		eldest.next();
+		eldest.remove();
+	    }
+	}
+    }
+
+    // Arguments: the socket, then the options of the scheduler.
+    public static void serve(String... args) {
+	String socket = args[0];
+	boolean virtual = false;
+	int limit = Integer.MAX_VALUE;
+	for (int i = 1; i < args.length; i++) {
+	    switch (args[i]) {
+	    case "--virtual-threads":
+		virtual = true;
+		break;
+	    case "--max-runs":
+		try {
+		    limit = Integer.parseInt(args[++i]);
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+		    Sycpol.exit("ARGUMENT ERROR: INVALID RUN COUNT.");
+		}
+		if (limit < 1)
+		    Sycpol.exit("ARGUMENT ERROR: INVALID RUN COUNT.", "GOT: " + limit);
+		break;
+	    default:
+		Sycpol.exit("ARGUMENT ERROR: UNKNOWN SERVER OPTION.", "GOT: " + args[i]);
+	    }
+	}
+	SycpolScheduler scheduler = new SycpolScheduler(limit, virtual);
+	if (virtual && !scheduler.virtual)
+	    System.err.println("VIRTUAL THREADS NOT AVAILABLE.");
+
+	Path path = new File(socket).toPath();
+	try {
+	    if (Files.exists(path)) {
+		SocketChannel test = null;
+		try {
+		    test = SocketChannel.open(UnixDomainSocketAddress.of(path));
+		} catch (IOException ex) {
+		    Files.delete(path);
+		}
+		if (test != null) {
+		    test.close();
+		    Sycpol.exit("IO ERROR: SERVER ALREADY RUNNING.", "SOCKET: " + socket);
+		}
+	    }
+
+	    ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+	    server.bind(UnixDomainSocketAddress.of(path));
+	    path.toFile().deleteOnExit();
+
+	    while (true) {
+		final SocketChannel client = server.accept();
+		scheduler.submit(new Runnable() {
+		    @Override
+		    public void run() {
+			try {
+			    serve(client);
+			} catch (IOException ex) {
+			}
+		    }
+		}, client);
+	    }
+	} catch (IOException ex) {
+	    Sycpol.exit("IO ERROR: " + ex.toString().toUpperCase(), "SOCKET: " + socket);
+	}
+    }
+
+    private static void serve(SocketChannel client) throws IOException {
+	DataInputStream in = new DataInputStream(new BufferedInputStream(input(client)));
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output(client)));
+
+	String directory = in.readUTF();
+	String[] args = new String[in.readInt()];
+	for (int i = 0; i < args.length; i++) args[i] = in.readUTF();
+
+	SycpolContext context = new SycpolContext();
+	context.directory = new File(directory);
+	context.out = new PrintStream(new FrameOutput(out, OUT), true);
+	context.err = new PrintStream(new FrameOutput(out, ERR), true);
+	context.open(new FrameInput(in), new FrameOutput(out, OUT));
+	String key = key(directory, args);
+	context.program = cached(key);
+	boolean cached = context.program != null;
+	int status = 0;
+
+	try {
+	    Sycpol.run(context, args);
+	} catch (SycpolException ex) {
+	    context.streams.closeAll();
+	    ex.print(context.err, context.verbose);
+	    status = 1;
+	} catch (Throwable ex) {
+	    ex.printStackTrace(context.err);
+	    status = 1;
+	} finally {
+	    context.streams.closeAll();
+	    context.out.flush();
+	    context.err.flush();
+	}
+
+	if (!cached && key != null && context.program != null && !context.files.isEmpty()) {
+	    Entry entry = new Entry();
+	    entry.program = context.program;
+	    entry.files = new HashMap<>(context.files);
+	    store(key, entry);
+	}
+
+	out.writeByte(EXIT);
+	out.writeInt(status);
+	out.flush();
+    }
+
+    // Streams of a socket. Unlike Channels.newInputStream, a blocked read
+    // does not keep another thread from writing.
+    static InputStream input(final SocketChannel channel) {
+	return new InputStream() {
+	    @Override
+	    public int read() throws IOException {
+		byte[] b = new byte[1];
+		return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+	    }
+
+	    @Override
+	    public int read(byte[] b, int off, int len) throws IOException {
+		return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+	    }
+	};
+    }
+
+    static OutputStream output(final SocketChannel channel) {
+	return new OutputStream() {
+	    @Override
+	    public void write(int b) throws IOException {
+		this.write(new byte[] { (byte) b }, 0, 1);
+	    }
+
+	    @Override
+	    public void write(byte[] b, int off, int len) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+		while (buf.hasRemaining()) channel.write(buf);
+	    }
+	};
+    }
+
+    // Writes each block of bytes as one frame. All frames of a client
+    // are written by the thread serving it.
+    private static class FrameOutput extends OutputStream {
+	private DataOutputStream out;
+	private byte tag;
+
+	FrameOutput(DataOutputStream out, byte tag) {
+	    this.out = out;
+	    this.tag = tag;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    this.write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+	    if (len == 0) return;
+	    this.out.writeByte(this.tag);
+	    this.out.writeInt(len);
+	    this.out.write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+	    this.out.flush();
+	}
+    }
+
+    // Reads the standard input frames of the client.
+    private static class FrameInput extends InputStream {
+	private DataInputStream in;
+	// Bytes left in the current frame, or -1 after the last frame.
+	private int left;
+
+	FrameInput(DataInputStream in) {
+	    this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException {
+	    byte[] b = new byte[1];
+	    return this.read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+	    if (len == 0) return 0;
+	    while (this.left == 0) {
+		this.left = this.in.readInt();
+		if (this.left == 0) this.left = -1;
+	    }
+	    if (this.left == -1) return -1;
+	    int n = this.in.read(b, off, Math.min(len, this.left));
+	    if (n == -1) throw new IOException("client closed input");
+	    this.left -= n;
+	    return n;
+	}
+    }
+}
@@ -0,0 +1,519 @@
+package sycpol;
+
+import sycpol.Sycpol;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+
+// Buffered streams behind SEND and THE NEXT FROM. Output is flushed
+// according to the flush policy, and all output is flushed on exit.
+// Each run has its own policies and outputs.
+public class SycpolStreams {
+
+    public enum Flush {
+	// Only when the buffer is full, and on exit.
+	EXIT,
+	// After every newline.
+	NEWLINE,
+	// When the given number of bytes is buffered.
+	SIZE,
+	// When the given number of milliseconds has passed since the
+	// last flush. Checked whenever a byte is sent.
+	TIME
+    }
+
+    public enum Sync {
+	// Leave it to the operating system.
+	NEVER,
+	// After every flush of a file.
+	FLUSH,
+	// Once, when the program exits.
+	EXIT
+    }
+
+    public static final int BUFFER_SIZE = 8192;
+    public static final int CHANNEL_BUFFER_SIZE = 1 << 20;
+
+    // The policy set with --flush. By default standard output is
+    // flushed at newlines and files when their buffer is full.
+    private Flush policy = null;
+    private int size = BUFFER_SIZE;
+    private long interval = 100;
+    // The sync policy set with --fsync, used by files whose
+    // declaration does not give one.
+    private Sync sync = Sync.NEVER;
+
+    // The streams of a run are only used by the thread running it, so
+    // they take no locks, and a virtual thread blocked in I/O does not
+    // pin its carrier.
+    private final List<Output> outputs = new ArrayList<>();
+    private final List<Source> inputs = new ArrayList<>();
+    // Kept registered by closeAll, so that the context can run another
+    // program.
+    private Output standardOutput;
+    private Source standardInput;
+
+    // Parses a policy: EXIT, NEWLINE, SIZE:<BYTES> or TIME:<MS>.
+    public void policy(String spec) {
+	String[] parts = spec.toUpperCase().split(":");
+	try {
+	    this.policy = Flush.valueOf(parts[0]);
+	    if (this.policy == Flush.SIZE && parts.length > 1)
+		this.size = Math.max(1, Integer.parseInt(parts[1]));
+	    if (this.policy == Flush.TIME && parts.length > 1)
+		this.interval = Long.parseLong(parts[1]);
+	} catch (IllegalArgumentException ex) {
+	    Sycpol.exit("ARGUMENT ERROR: UNKNOWN FLUSH POLICY.", "POLICY: " + spec);
+	}
+    }
+
+    // Parses a sync policy, or returns null if it is unknown.
+    public static Sync sync(String spec) {
+	for (Sync s : Sync.values())
+	    if (s.name().equals(spec.toUpperCase())) return s;
+	return null;
+    }
+
+    public void syncPolicy(String spec) {
+	this.sync = sync(spec);
+	if (this.sync == null)
+	    Sycpol.exit("ARGUMENT ERROR: UNKNOWN SYNC POLICY.", "POLICY: " + spec);
+    }
+
+    public OutputStream standardOutput(OutputStream out) {
+	this.outputs.remove(this.standardOutput);
+	this.standardOutput = new StreamOutput("STANDARD OUTPUT", out, Flush.NEWLINE);
+	return this.register(this.standardOutput);
+    }
+
+    public InputStream standardInput(InputStream in) {
+	this.inputs.remove(this.standardInput);
+	this.standardInput = new Input("STANDARD INPUT", in);
+	return this.register(this.standardInput);
+    }
+
+    // A file written through a FileChannel. A size hint extends the
+    // file up front; it is cut to the written length when the file is
+    // released. The sync policy may be null to use the one set with
+    // --fsync.
+    public OutputStream output(File file, long sizeHint, Sync sync) throws IOException {
+	SycpolEvents.StreamOpen event = new SycpolEvents.StreamOpen();
+	event.begin();
+	FileChannel channel = FileChannel.open(file.toPath(),
+					       StandardOpenOption.CREATE,
+					       StandardOpenOption.WRITE,
+					       StandardOpenOption.TRUNCATE_EXISTING);
+	if (sizeHint > 0)
+	    channel.write(ByteBuffer.allocate(1), sizeHint - 1);
+	Output o = new ChannelOutput(file.getPath(), channel, sizeHint,
+				     sync != null ? sync : this.sync);
+	opened(event, file, true);
+	return this.register(o);
+    }
+
+    // A file read through memory mapping. Pipes, devices and other
+    // files that cannot be mapped are read through a buffer.
+    public InputStream input(File file) throws IOException {
+	SycpolEvents.StreamOpen event = new SycpolEvents.StreamOpen();
+	event.begin();
+	// A file the program writes is read with what was sent to it.
+	for (Output o : this.outputs)
+	    if (o.name.equals(file.getPath())) o.flush();
+	Source in = Files.isRegularFile(file.toPath())
+	    ? new MappedInput(file.getPath(), FileChannel.open(file.toPath(), StandardOpenOption.READ))
+	    : new FileInput(file.getPath(), new FileInputStream(file));
+	opened(event, file, false);
+	return this.register(in);
+    }
+
+    private static void opened(SycpolEvents.StreamOpen event, File file, boolean output) {
+	event.end();
+	if (!event.shouldCommit()) return;
+	event.stream = file.getPath();
+	event.output = output;
+	event.commit();
+    }
+
+    private OutputStream register(Output o) {
+	this.outputs.add(o);
+	return o;
+    }
+
+    private InputStream register(Source in) {
+	this.inputs.add(in);
+	return in;
+    }
+
+    // Flushes every output.
+    public void flushAll() {
+	for (Output o : this.outputs) {
+	    try {
+		o.flush();
+	    } catch (IOException ex) {
+	    }
+	}
+    }
+
+    // The numbers of outputs and inputs opened so far, to be passed
+    // to release.
+    public long mark() {
+	return (long) this.outputs.size() << 32 | this.inputs.size();
+    }
+
+    // Marks the streams of an object that is copied into another or
+    // stored in a list. They may outlive the declaration that opened
+    // them, so they are only closed on exit.
+    static void escape(InputStream in, OutputStream out) {
+	if (out instanceof Output) ((Output) out).escaped = true;
+	if (in instanceof Source) ((Source) in).escaped = true;
+    }
+
+    // Flushes, finishes and forgets the outputs, and closes and forgets
+    // the inputs, opened since the mark, when the declarations that
+    // opened them go out of scope. Streams that escaped are kept.
+    public void release(long mark) {
+	for (int i = this.outputs.size() - 1; i >= (int) (mark >>> 32); i--) {
+	    if (this.outputs.get(i).escaped) continue;
+	    Output o = this.outputs.remove(i);
+	    try {
+		this.close(o);
+	    } catch (IOException ex) {
+		Sycpol.exit("IO ERROR: FS FAILURE.", "PATH: " + o.name, "JAVA ERROR: " + ex.toString().toUpperCase());
+	    }
+	}
+	for (int i = this.inputs.size() - 1; i >= (int) mark; i--)
+	    if (!this.inputs.get(i).escaped)
+		this.close(this.inputs.remove(i));
+    }
+
+    private void close(Source in) {
+	try {
+	    in.close();
+	} catch (IOException ex) {
+	}
+	transferred(in.name, false, in.taken());
+    }
+
+    private void close(Output o) throws IOException {
+	try {
+	    o.flush();
+	} finally {
+	    o.finish();
+	    transferred(o.name, true, o.bytes);
+	}
+    }
+
+    // Flushes and finishes every output and closes every input when
+    // the program exits, and forgets them except the standard streams.
+    // Errors are ignored, since the program is exiting.
+    public void closeAll() {
+	for (Output o : this.outputs) {
+	    try {
+		this.close(o);
+	    } catch (IOException ex) {
+	    }
+	}
+	for (Source in : this.inputs)
+	    this.close(in);
+	this.outputs.clear();
+	this.inputs.clear();
+	if (this.standardOutput != null) this.outputs.add(this.standardOutput);
+	if (this.standardInput != null) this.inputs.add(this.standardInput);
+    }
+
+    private static void transferred(String stream, boolean output, long bytes) {
+	SycpolEvents.Stream event = new SycpolEvents.Stream();
+	if (!event.shouldCommit()) return;
+	event.stream = stream;
+	event.output = output;
+	event.bytes = bytes;
+	event.commit();
+    }
+
+    private abstract class Output extends OutputStream {
+	final String name;
+	// Bytes written out so far.
+	long bytes;
+	boolean escaped;
+	// Used when no policy is set.
+	private Flush fallback;
+	private long last = System.nanoTime();
+
+	Output(String name, Flush fallback) {
+	    this.name = name;
+	    this.fallback = fallback;
+	}
+
+	// Buffers a byte and returns the number of bytes buffered.
+	abstract int buffer(int b, int limit) throws IOException;
+
+	abstract int buffered();
+
+	// Writes the buffered bytes to the underlying stream or file.
+	abstract void writeOut() throws IOException;
+
+	// Writes out the buffered bytes.
+	void drain() throws IOException {
+	    SycpolEvents.StreamFlush event = new SycpolEvents.StreamFlush();
+	    event.begin();
+	    int n = this.buffered();
+	    this.writeOut();
+	    this.bytes += n;
+	    event.commit(this.name, n);
+	}
+
+	// The number of bytes buffered before a flush.
+	abstract int capacity();
+
+	void finish() throws IOException {
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    Flush p = policy != null ? policy : this.fallback;
+	    int limit = p == Flush.SIZE ? size : this.capacity();
+	    if (this.buffer(b, limit) >= limit
+		|| (p == Flush.NEWLINE && b == '\n')
+		|| (p == Flush.TIME
+		    && System.nanoTime() - this.last >= interval * 1000000))
+		this.flush();
+	}
+
+	@Override
+	public void flush() throws IOException {
+	    this.drain();
+	    this.last = System.nanoTime();
+	}
+    }
+
+    private class StreamOutput extends Output {
+	private OutputStream out;
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int count;
+
+	StreamOutput(String name, OutputStream out, Flush fallback) {
+	    super(name, fallback);
+	    this.out = out;
+	}
+
+	@Override
+	int buffer(int b, int limit) throws IOException {
+	    if (this.count == this.buf.length) {
+		if (this.count < limit)
+		    this.buf = Arrays.copyOf(this.buf, (int) Math.min(limit, 2L * this.count));
+		else
+		    this.drain();
+	    }
+	    this.buf[this.count++] = (byte) b;
+	    return this.count;
+	}
+
+	@Override
+	int buffered() {
+	    return this.count;
+	}
+
+	@Override
+	void writeOut() throws IOException {
+	    if (this.count > 0) {
+		this.out.write(this.buf, 0, this.count);
+		this.count = 0;
+	    }
+	    this.out.flush();
+	}
+
+	@Override
+	int capacity() {
+	    return BUFFER_SIZE;
+	}
+    }
+
+    // Collects bytes in a direct buffer and writes them with
+    // FileChannel.write. The buffer is allocated on the first write,
+    // as large as the size hint or BUFFER_SIZE, and grows up to
+    // CHANNEL_BUFFER_SIZE like the buffer of StreamOutput.
+    private class ChannelOutput extends Output {
+	private FileChannel channel;
+	private ByteBuffer buf;
+	private long sizeHint;
+	private Sync sync;
+	private long written;
+
+	ChannelOutput(String name, FileChannel channel, long sizeHint, Sync sync) {
+	    super(name, Flush.EXIT);
+	    this.channel = channel;
+	    this.sizeHint = sizeHint;
+	    this.sync = sync;
+	}
+
+	@Override
+	int buffer(int b, int limit) throws IOException {
+	    if (this.buf == null) {
+		if (!this.channel.isOpen()) throw new IOException("Stream closed");
+		this.buf = ByteBuffer.allocateDirect((int) Math.min(CHANNEL_BUFFER_SIZE,
+								    this.sizeHint > 0 ? this.sizeHint : BUFFER_SIZE));
+	    }
+	    if (!this.buf.hasRemaining()) {
+		if (this.buf.capacity() < Math.min(limit, CHANNEL_BUFFER_SIZE)) {
+		    ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(CHANNEL_BUFFER_SIZE, 2L * this.buf.capacity()));
+		    this.buf.flip();
+		    this.buf = grown.put(this.buf);
+		}
+		else
+		    this.drain();
+	    }
+	    this.buf.put((byte) b);
+	    return this.buf.position();
+	}
+
+	@Override
+	int buffered() {
+	    return this.buf != null ? this.buf.position() : 0;
+	}
+
+	@Override
+	void writeOut() throws IOException {
+	    if (this.buf == null || this.buf.position() == 0) return;
+	    this.buf.flip();
+	    while (this.buf.hasRemaining())
+		this.written += this.channel.write(this.buf, this.written);
+	    this.buf.clear();
+	    if (this.sync == Sync.FLUSH) this.channel.force(false);
+	}
+
+	@Override
+	int capacity() {
+	    return CHANNEL_BUFFER_SIZE;
+	}
+
+	@Override
+	void finish() throws IOException {
+	    try {
+		if (this.sizeHint > 0) this.channel.truncate(this.written);
+		if (this.sync != Sync.NEVER) this.channel.force(true);
+	    } finally {
+		this.channel.close();
+		this.buf = null;
+	    }
+	}
+    }
+
+    // An input that knows how many bytes were taken from it.
+    private abstract static class Source extends InputStream {
+	final String name;
+	boolean escaped;
+
+	Source(String name) {
+	    this.name = name;
+	}
+
+	abstract long taken();
+    }
+
+    // Standard input. Output is flushed before it waits for more
+    // input, so that prompts are shown. Closing it leaves the
+    // underlying stream open.
+    private class Input extends Source {
+	private InputStream in;
+	private byte[] buf = new byte[BUFFER_SIZE];
+	private int pos;
+	private int count;
+	// Bytes read into the buffer so far.
+	private long total;
+
+	Input(String name, InputStream in) {
+	    super(name);
+	    this.in = in;
+	}
+
+	@Override
+	public int read() throws IOException {
+	    if (this.pos == this.count) {
+		// What was sent before waiting for the user is shown first.
+		if (this == standardInput) flushAll();
+		this.pos = 0;
+		this.count = Math.max(0, this.in.read(this.buf));
+		this.total += this.count;
+		if (this.count == 0) return -1;
+	    }
+	    return this.buf[this.pos++] & 0xff;
+	}
+
+	@Override
+	long taken() {
+	    return this.total - (this.count - this.pos);
+	}
+    }
+
+    // A file that cannot be mapped, such as a pipe.
+    private class FileInput extends Input {
+	private InputStream in;
+
+	FileInput(String name, InputStream in) {
+	    super(name, in);
+	    this.in = in;
+	}
+
+	@Override
+	public void close() throws IOException {
+	    this.in.close();
+	}
+    }
+
+    // Maps the file one window at a time, since a single mapping is
+    // limited to 2 GB.
+    private static class MappedInput extends Source {
+	private static final long WINDOW = 1L << 30;
+
+	private FileChannel channel;
+	private long size;
+	// File position of the end of the current window.
+	private long end;
+	private MappedByteBuffer buf;
+
+	MappedInput(String name, FileChannel channel) throws IOException {
+	    super(name);
+	    this.channel = channel;
+	    this.size = channel.size();
+	    this.map();
+	}
+
+	private void map() throws IOException {
+	    long length = Math.min(WINDOW, this.size - this.end);
+	    this.buf = this.channel.map(FileChannel.MapMode.READ_ONLY, this.end, length);
+	    this.end += length;
+	}
+
+	@Override
+	public int read() throws IOException {
+	    if (!this.buf.hasRemaining()) {
+		if (this.end == this.size) return -1;
+		this.map();
+	    }
+	    return this.buf.get() & 0xff;
+	}
+
+	@Override
+	long taken() {
+	    return this.end - this.buf.remaining();
+	}
+
+	@Override
+	public void close() throws IOException {
+	    this.channel.close();
+	}
+    }
+}
@@ -0,0 +1,105 @@
+package sycpol;
+
+import sycpol.SycpolParser;
+import sycpol.SycpolParser.Procedure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.io.PrintStream;
+
+// The last steps of a run with --trace. Each step is a single long in
+// a ring allocated up front, so tracing allocates nothing while the
+// program runs and can be left on. The ring is printed, like --debug
+// output, when the program fails or when print is called.
+public class SycpolTrace {
+
+    public static final int CALL = 1, RETURN = 2, LINE = 3, SEND = 4, NEXT = 5;
+
+    // Steps kept with --trace-to but no --trace.
+    public static final int DEFAULT_SIZE = 1000;
+
+    // Steps packed as kind (8 bits), procedure (24), line (16) and
+    // value (16).
+    private final long[] steps;
+    private final int mask;
+    private long count;
+
+    private final Map<Procedure, Integer> ids = new IdentityHashMap<>();
+    private final List<Procedure> procedures = new ArrayList<>();
+    // The procedure running.
+    private int current;
+
+    // Keeps at least the given number of steps.
+    public SycpolTrace(int size) {
+	int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+	this.steps = new long[Math.max(2, capacity)];
+	this.mask = this.steps.length - 1;
+	this.procedures.add(null);
+    }
+
+    // Records a call. Returns the caller, to be passed to leave.
+    int enter(Procedure proc) {
+	Integer id = this.ids.get(proc);
+	if (id == null) {
+	    id = this.procedures.size();
+	    if (id == 1 << 24)
+		Sycpol.exit("STORAGE ERROR: TOO MANY PROCEDURES TO TRACE.", "PROCEDURE: " + proc.name);
+	    this.ids.put(proc, id);
+	    this.procedures.add(proc);
+	}
+	int caller = this.current;
+	this.current = id;
+	this.record(CALL, 0, 0);
+	return caller;
+    }
+
+    void leave(int caller) {
+	this.record(RETURN, 0, 0);
+	this.current = caller;
+    }
+
+    void record(int kind, int line, int value) {
+	this.steps[(int) this.count++ & this.mask]
+	    = (long) kind << 56 | (long) this.current << 32
+	    | (line & 0xffffL) << 16 | (value & 0xffffL);
+    }
+
+    // Prints the steps kept, the oldest first.
+    public void print(PrintStream out, SycpolParser.Program prog) {
+	Map<Procedure, String> names = new HashMap<>();
+	for (SycpolParser.Module mod : prog.modules.values())
+	    for (Procedure proc : mod.procedures.values())
+		names.put(proc, mod.name + " " + proc.name);
+
+	long first = Math.max(0, this.count - this.steps.length);
+	out.println("TRACE: LAST " + (this.count - first) + " OF " + this.count + " STEPS");
+	for (long i = first; i < this.count; i++) {
+	    long step = this.steps[(int) i & this.mask];
+	    Procedure proc = this.procedures.get((int) (step >>> 32) & 0xffffff);
+	    String name = proc != null ? names.get(proc) : "";
+	    short line = (short) (step >>> 16);
+	    short value = (short) step;
+	    switch ((int) (step >>> 56)) {
+	    case CALL:
+		out.println("PROCEEDING TO " + name);
+		break;
+	    case RETURN:
+		out.println("RETURNING FROM " + name);
+		break;
+	    case LINE:
+		out.println(name + " (" + line + ") " + proc.statements.get(line));
+		break;
+	    case SEND:
+		out.println("  SEND " + value);
+		break;
+	    case NEXT:
+		out.println("  NEXT " + value);
+		break;
+	    }
+	}
+    }
+}
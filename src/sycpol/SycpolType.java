@@ -0,0 +1,152 @@
+package sycpol;
+
+import sycpol.Sycpol;
+import sycpol.SycpolParser;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Descriptor of a SYCPOL data type. Descriptors are interned, so two
+// types are the same exactly when their descriptors are identical.
+public final class SycpolType {
+
+    public enum Kind {
+	STRING8, STRING16, STRING32,
+	INTEGER8, INTEGER16,
+	IOSTREAM, ISTREAM, OSTREAM, STREAM,
+	LIST, STRUCTURE
+    }
+
+    private static final ConcurrentMap<String, SycpolType> types
+	= new ConcurrentHashMap<>();
+
+    public static final SycpolType STRING8 = of(SycpolParser.STRING8);
+    public static final SycpolType STRING16 = of(SycpolParser.STRING16);
+    public static final SycpolType STRING32 = of(SycpolParser.STRING32);
+    public static final SycpolType INTEGER8 = of(SycpolParser.INTEGER8);
+    public static final SycpolType INTEGER16 = of(SycpolParser.INTEGER16);
+    public static final SycpolType IOSTREAM = of(SycpolParser.IOSTREAM);
+    public static final SycpolType ISTREAM = of(SycpolParser.ISTREAM);
+    public static final SycpolType OSTREAM = of(SycpolParser.OSTREAM);
+    public static final SycpolType STREAM = of(SycpolParser.STREAM);
+
+    public final Kind kind;
+    // The type as written in declarations, e.g. "+INTEGER 8".
+    public final String name;
+    // Element type of a list.
+    public final SycpolType element;
+    // Name of the structure, with the % prefix.
+    public final String structure;
+
+    private SycpolType(Kind kind, String name, SycpolType element, String structure) {
+	this.kind = kind;
+	this.name = name;
+	this.element = element;
+	this.structure = structure;
+    }
+
+    public static SycpolType of(String name) {
+	SycpolType type = types.get(name);
+	if (type != null) return type;
+
+	if (name.startsWith("+"))
+	    type = new SycpolType(Kind.LIST, name, of(name.substring(1)), null);
+	else if (name.startsWith("%"))
+	    type = new SycpolType(Kind.STRUCTURE, name, null, name);
+	else {
+	    Kind kind = null;
+	    switch (name) {
+	    case SycpolParser.STRING8: kind = Kind.STRING8; break;
+	    case SycpolParser.STRING16: kind = Kind.STRING16; break;
+	    case SycpolParser.STRING32: kind = Kind.STRING32; break;
+	    case SycpolParser.INTEGER8: kind = Kind.INTEGER8; break;
+	    case SycpolParser.INTEGER16: kind = Kind.INTEGER16; break;
+	    case SycpolParser.IOSTREAM: kind = Kind.IOSTREAM; break;
+	    case SycpolParser.ISTREAM: kind = Kind.ISTREAM; break;
+	    case SycpolParser.OSTREAM: kind = Kind.OSTREAM; break;
+	    case SycpolParser.STREAM: kind = Kind.STREAM; break;
+	    default:
+		Sycpol.exit("TYPE ERROR: UNSUPPORTED TYPE. ", "TYPE:\n"+name);
+	    }
+	    type = new SycpolType(kind, name, null, null);
+	}
+
+	SycpolType old = types.putIfAbsent(name, type);
+	return old != null ? old : type;
+    }
+
+    public boolean isStructure() {
+	return this.kind == Kind.STRUCTURE;
+    }
+
+    public boolean isList() {
+	return this.kind == Kind.LIST;
+    }
+
+    public boolean isString() {
+	return this.kind == Kind.STRING8
+	    || this.kind == Kind.STRING16
+	    || this.kind == Kind.STRING32;
+    }
+
+    public boolean isInteger() {
+	return this.kind == Kind.INTEGER8
+	    || this.kind == Kind.INTEGER16;
+    }
+
+    public boolean isStream() {
+	return this.kind == Kind.STREAM
+	    || this.kind == Kind.ISTREAM
+	    || this.kind == Kind.OSTREAM
+	    || this.kind == Kind.IOSTREAM;
+    }
+
+    public boolean isOStream() {
+	return this.kind == Kind.STREAM
+	    || this.kind == Kind.OSTREAM
+	    || this.kind == Kind.IOSTREAM;
+    }
+
+    public boolean isIStream() {
+	return this.kind == Kind.STREAM
+	    || this.kind == Kind.ISTREAM
+	    || this.kind == Kind.IOSTREAM;
+    }
+
+    // Maximum length of a string type.
+    public int length() {
+	switch (this.kind) {
+	case STRING8: return 8;
+	case STRING16: return 16;
+	case STRING32: return 32;
+	}
+	return 0;
+    }
+
+    // Whether a value of this type can be stored where the other
+    // type is expected.
+    public boolean assignableTo(SycpolType to) {
+	if (this == to) return true;
+	if (this.kind == Kind.INTEGER8
+	    && to.kind == Kind.INTEGER16) return true;
+	if (to.kind == Kind.STREAM
+	    && (this.kind == Kind.IOSTREAM
+		|| this.kind == Kind.ISTREAM
+		|| this.kind == Kind.OSTREAM)) return true;
+	return false;
+    }
+
+    // The type family used in error messages.
+    public String simpleName() {
+	if (this.isList()) return "LIST";
+	if (this.isStructure()) return this.name;
+	if (this.isInteger()) return "INTEGER";
+	if (this.isString()) return "STRING";
+	if (this.isStream()) return "STREAM";
+	return this.name;
+    }
+
+    public String toString() {
+	return this.name;
+    }
+}